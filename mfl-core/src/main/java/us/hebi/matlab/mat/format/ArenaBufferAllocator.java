@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.util.Unsafe9R;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Buffer allocator that carves buffers out of large direct slabs by incrementing a
+ * position, and that frees all memory at once when it gets closed. This is useful for
+ * workloads that read a file, process it, and discard everything together, which would
+ * otherwise allocate and free a direct buffer for every single array.
+ * <p>
+ * Slabs are never reused, so all buffers are zero without needing to be cleared.
+ * Releasing a buffer does not reclaim any memory until the arena gets closed, after
+ * which none of the allocated buffers may be accessed anymore. This class is thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ * @see Mat5Reader#enableArenaAllocation()
+ */
+public class ArenaBufferAllocator implements BufferAllocator, Closeable {
+
+    public ArenaBufferAllocator() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize size of each slab. Buffers larger than a quarter of a slab get allocated separately.
+     */
+    public ArenaBufferAllocator(int slabSize) {
+        checkArgument(slabSize >= 64, "slab size is too small");
+        this.slabSize = slabSize;
+    }
+
+    @Override
+    public synchronized ByteBuffer allocate(int numBytes) {
+        checkArgument(numBytes >= 0, "number of bytes can't be negative");
+        checkState(!closed, "Arena has already been closed");
+        allocatedBytes += numBytes;
+
+        // Large buffers would waste too much of a slab
+        if (numBytes > slabSize / 4) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(numBytes);
+            slabs.add(buffer);
+            reservedBytes += numBytes;
+            return buffer.order(ByteOrder.nativeOrder());
+        }
+
+        // Keep 8 byte alignment for subsequent buffers
+        int alignedBytes = (numBytes + 7) & ~7;
+        if (slab == null || slab.remaining() < alignedBytes) {
+            slab = ByteBuffer.allocateDirect(slabSize);
+            slabs.add(slab);
+            reservedBytes += slabSize;
+        }
+        int position = slab.position();
+        slab.limit(position + numBytes);
+        ByteBuffer buffer = slab.slice().order(ByteOrder.nativeOrder());
+        slab.limit(slab.capacity());
+        slab.position(position + alignedBytes);
+        return buffer;
+    }
+
+    /**
+     * Does nothing. The memory gets freed when the arena gets closed.
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+    }
+
+    /**
+     * @return number of bytes that were requested since the arena was created
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return number of bytes held by slabs and separately allocated buffers
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Frees all slabs. None of the allocated buffers may be accessed afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        for (ByteBuffer buffer : slabs) {
+            Unsafe9R.invokeCleaner(buffer);
+        }
+        slabs.clear();
+        slab = null;
+        reservedBytes = 0;
+        closed = true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ArenaBufferAllocator{" +
+                "allocatedBytes=" + allocatedBytes +
+                ", reservedBytes=" + reservedBytes +
+                ", closed=" + closed +
+                '}';
+    }
+
+    private final int slabSize;
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    private ByteBuffer slab = null;
+    private long allocatedBytes = 0;
+    private long reservedBytes = 0;
+    private boolean closed = false;
+
+    private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+}
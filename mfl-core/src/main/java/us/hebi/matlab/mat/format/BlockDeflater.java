@@ -0,0 +1,454 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.Deflater7R;
+import us.hebi.matlab.mat.util.MemoryBudget;
+import us.hebi.matlab.mat.util.Tasks.IoTask;
+import us.hebi.matlab.mat.util.ZlibPool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Output stream that splits the data into blocks that get deflated concurrently,
+ * similar to 'pigz'. Each block is a raw deflate stream that uses the tail of the
+ * previous block as a preset dictionary and ends on a byte boundary. Combined with
+ * a zlib header and the combined Adler-32 checksum, the blocks form a single valid
+ * zlib stream that can be read by any zlib compatible reader including MATLAB.
+ * <p>
+ * Independent blocks don't use a dictionary and end at a full flush point, so
+ * each block can also be inflated on its own by a raw inflater. The location of
+ * each block is available via {@link #getBlockOffsets()} after writing.
+ * <p>
+ * The number of bytes held by pending blocks is limited by a memory budget. Once it
+ * is used up, writes wait until earlier blocks have been compressed. Blocks that get
+ * streamed to a seekable sink (see {@link #streamTo(Sink)}) keep their compressed
+ * size charged until they have been written, so the budget also limits the memory
+ * of entries that compress poorly. Otherwise the compressed blocks are held until
+ * {@link #writeTo(Sink)} and only the uncompressed input is limited.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+class BlockDeflater extends OutputStream {
+
+    /**
+     * @return true if the runtime supports flushing blocks without finishing the stream
+     */
+    static boolean isSupported() {
+        return Deflater7R.isAvailable();
+    }
+
+    BlockDeflater(ExecutorService executorService, int level, int blockSize, MemoryBudget budget, boolean independent) {
+        checkArgument(blockSize <= budget.getMaxBytes(), "block size exceeds the memory budget");
+        this.executorService = checkNotNull(executorService);
+        this.level = level;
+        this.independent = independent;
+        this.budget = budget;
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        checkState(!closed, "stream has already been closed");
+        while (length > 0) {
+            if (position == block.length)
+                submitBlock(false);
+            int n = Math.min(length, block.length - position);
+            System.arraycopy(bytes, offset, block, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Submits the last block. Compression may still be in progress afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        submitBlock(true);
+        closed = true;
+    }
+
+    /**
+     * Writes the start of the 'Compressed' tag and lets finished blocks get written to the sink
+     * in order while the remaining data is still being written to this stream. The tag size gets
+     * updated in {@link #writeTo(Sink)}, so the sink needs to support seeking.
+     *
+     * @param sink target sink that may not be written to by anyone else until the entry is done
+     * @throws IOException if the sink can't be written to
+     */
+    void streamTo(Sink sink) throws IOException {
+        checkState(streamSink == null && blocks.isEmpty() && position == 0, "streaming needs to start before writing data");
+        tagPosition = sink.position();
+        Mat5Type.Compressed.writeTag(DUMMY_SIZE, false, sink);
+        writeZlibHeader(sink);
+        streamSink = sink;
+    }
+
+    /**
+     * Waits for all blocks to finish and writes the data as a 'Compressed' tag
+     *
+     * @param sink target sink
+     * @throws IOException if compression failed
+     */
+    void writeTo(Sink sink) throws IOException {
+        checkState(closed, "stream needs to be closed first");
+        try {
+            if (streamSink == null) {
+
+                // Wait for all blocks so that the size is known upfront
+                List<CompressedBlock> compressed = new ArrayList<CompressedBlock>(blocks.size());
+                long numBytes = ZLIB_HEADER_SIZE + ZLIB_TRAILER_SIZE;
+                while (!blocks.isEmpty()) {
+                    CompressedBlock block = await(blocks.peekFirst());
+                    blocks.pollFirst();
+                    compressed.add(block);
+                    numBytes += block.length;
+                }
+
+                // Write zlib stream
+                Mat5Type.Compressed.writeTag(Casts.sint32(numBytes), false, sink);
+                writeZlibHeader(sink);
+                for (CompressedBlock block : compressed) {
+                    writeBlock(sink, block);
+                }
+                writeZlibTrailer(sink);
+
+            } else {
+                checkArgument(sink == streamSink, "blocks are being streamed to a different sink");
+
+                // Write remaining blocks
+                while (!blocks.isEmpty()) {
+                    writeNextBlock();
+                }
+                writeZlibTrailer(sink);
+
+                // Overwrite placeholder tag with the real size. Compressed tags don't require padding.
+                long end = sink.position();
+                sink.position(tagPosition);
+                Mat5Type.Compressed.writeTag(Casts.sint32(end - tagPosition - Mat5.MATRIX_TAG_SIZE), false, sink);
+                sink.position(end);
+
+            }
+        } catch (IOException ioe) {
+            discardBlocks();
+            throw ioe;
+        } catch (RuntimeException re) {
+            discardBlocks();
+            throw re;
+        }
+
+        blockOffsets = new long[offsets.size()];
+        for (int i = 0; i < blockOffsets.length; i++) {
+            blockOffsets[i] = offsets.get(i);
+        }
+    }
+
+    private void writeZlibHeader(Sink sink) throws IOException {
+        sink.writeByte((byte) ZLIB_CMF);
+        sink.writeByte((byte) getZlibFlags(level));
+    }
+
+    private void writeZlibTrailer(Sink sink) throws IOException {
+        sink.writeByte((byte) (combinedAdler >>> 24));
+        sink.writeByte((byte) (combinedAdler >>> 16));
+        sink.writeByte((byte) (combinedAdler >>> 8));
+        sink.writeByte((byte) combinedAdler);
+    }
+
+    private void writeBlock(Sink sink, CompressedBlock block) throws IOException {
+        sink.writeBytes(block.data, 0, block.length);
+        offsets.add(streamOffset);
+        streamOffset += block.length;
+        combinedAdler = combineAdler32(combinedAdler, block.adler, block.numInputBytes);
+    }
+
+    /**
+     * Writes finished blocks to the streaming sink, and waits for the oldest pending
+     * block while the budget is used up, since it is the one that gets written next.
+     */
+    private void acquireWhileStreaming(int numBytes) throws IOException {
+        while (!blocks.isEmpty() && blocks.peekFirst().isDone()) {
+            writeNextBlock();
+        }
+        while (!blocks.isEmpty()) {
+            if (budget.tryAcquire(numBytes))
+                return;
+            writeNextBlock();
+        }
+        budget.acquire(numBytes);
+    }
+
+    /**
+     * Waits for the oldest pending block, writes it to the streaming sink, and releases its budget
+     */
+    private void writeNextBlock() throws IOException {
+        CompressedBlock block = await(blocks.peekFirst());
+        blocks.pollFirst();
+        try {
+            writeBlock(streamSink, block);
+        } finally {
+            budget.release(block.data.length);
+        }
+    }
+
+    private static CompressedBlock await(Future<CompressedBlock> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for compressed blocks");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits for blocks that have not been written yet and returns their budget after a failure
+     */
+    private void discardBlocks() {
+        boolean interrupted = false;
+        for (Future<CompressedBlock> block : blocks) {
+            while (true) {
+                try {
+                    CompressedBlock result = block.get();
+                    if (streamSink != null)
+                        budget.release(result.data.length);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break; // budget was released by the task
+                }
+            }
+        }
+        blocks.clear();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return number of uncompressed bytes in each block except for the last one
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return offsets of the blocks relative to the beginning of the zlib stream, i.e., after the 'Compressed' tag
+     */
+    long[] getBlockOffsets() {
+        checkState(blockOffsets != null, "blocks have not been written yet");
+        return blockOffsets;
+    }
+
+    int getDeflateLevel() {
+        return level;
+    }
+
+    /**
+     * @return true if each block can be inflated without the preceding blocks
+     */
+    boolean isIndependent() {
+        return independent;
+    }
+
+    private void submitBlock(final boolean last) throws IOException {
+        // Limit the number of pending blocks
+        final int numBytes = position;
+        if (streamSink == null)
+            budget.acquire(block.length);
+        else
+            acquireWhileStreaming(block.length);
+        try {
+            final byte[] input = block;
+            final byte[] dictionary = independent ? null : this.dictionary;
+            final int flushMode = independent ? Deflater7R.FULL_FLUSH : Deflater7R.SYNC_FLUSH;
+            final boolean holdUntilWritten = streamSink != null;
+            blocks.add(executorService.submit(new IoTask<CompressedBlock>() {
+                @Override
+                public CompressedBlock call() {
+                    try {
+                        CompressedBlock result = compressBlock(input, numBytes, dictionary, level, flushMode, last);
+                        if (holdUntilWritten)
+                            budget.forceAcquire(result.data.length);
+                        return result;
+                    } finally {
+                        budget.release(input.length);
+                    }
+                }
+            }));
+        } catch (RuntimeException re) {
+            budget.release(block.length);
+            throw re;
+        }
+
+        // Keep the tail as the dictionary for the next block
+        if (!independent) {
+            int dictionarySize = Math.min(numBytes, DICTIONARY_SIZE);
+            this.dictionary = Arrays.copyOfRange(block, numBytes - dictionarySize, numBytes);
+        }
+        this.block = last ? null : new byte[block.length];
+        this.position = 0;
+    }
+
+    private static CompressedBlock compressBlock(byte[] input, int numBytes, byte[] dictionary, int level, int flushMode, boolean last) {
+        Adler32 adler = new Adler32();
+        adler.update(input, 0, numBytes);
+
+        Deflater deflater = ZlibPool.getDefault().borrowDeflater(level, true);
+        try {
+            if (dictionary != null && dictionary.length > 0)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(input, 0, numBytes);
+
+            byte[] output = new byte[numBytes / 2 + 64];
+            int length = 0;
+            if (last) {
+                // Final block sets the end of stream marker
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (length == output.length)
+                        output = Arrays.copyOf(output, output.length * 2);
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+            } else {
+                // Other blocks end on a byte boundary without marking the end
+                while (true) {
+                    if (length == output.length)
+                        output = Arrays.copyOf(output, output.length * 2);
+                    int available = output.length - length;
+                    int n = Deflater7R.deflate(deflater, output, length, available, flushMode);
+                    length += n;
+                    // Pooled deflaters may only apply a level change without consuming the input
+                    if (n < available && deflater.needsInput())
+                        break;
+                }
+            }
+            return new CompressedBlock(output, length, adler.getValue(), numBytes);
+
+        } finally {
+            ZlibPool.getDefault().release(deflater, true);
+        }
+    }
+
+    /**
+     * Computes the Adler-32 checksum of two concatenated sequences (port of zlib's adler32_combine)
+     *
+     * @param adler1 checksum of the first sequence
+     * @param adler2 checksum of the second sequence
+     * @param length2 length of the second sequence
+     * @return checksum of the combined sequence
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static int getZlibFlags(int level) {
+        final int compressionLevel;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+            compressionLevel = 2;
+        } else if (level <= 1) {
+            compressionLevel = 0;
+        } else if (level <= 5) {
+            compressionLevel = 1;
+        } else {
+            compressionLevel = 3;
+        }
+        int flags = compressionLevel << 6;
+        return flags + 31 - ((ZLIB_CMF << 8) + flags) % 31;
+    }
+
+    private static class CompressedBlock {
+
+        CompressedBlock(byte[] data, int length, long adler, int numInputBytes) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.numInputBytes = numInputBytes;
+        }
+
+        final byte[] data;
+        final int length;
+        final long adler;
+        final int numInputBytes;
+
+    }
+
+    private final ExecutorService executorService;
+    private final int level;
+    private final boolean independent;
+    private final int blockSize;
+    private final MemoryBudget budget;
+    private final ArrayDeque<Future<CompressedBlock>> blocks = new ArrayDeque<Future<CompressedBlock>>();
+    private byte[] block;
+    private byte[] dictionary = null;
+    private int position = 0;
+    private boolean closed = false;
+    private Sink streamSink = null;
+    private long tagPosition = 0;
+    private final List<Long> offsets = new ArrayList<Long>();
+    private long streamOffset = ZLIB_HEADER_SIZE;
+    private long combinedAdler = 1;
+    private long[] blockOffsets = null;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int DUMMY_SIZE = 0;
+    private static final int ZLIB_CMF = 0x78; // deflate with 32K window
+    private static final int ZLIB_HEADER_SIZE = 2;
+    private static final int ZLIB_TRAILER_SIZE = 4;
+
+}
@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.AbstractSource;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.Inflater11R;
+import us.hebi.matlab.mat.util.Tasks;
+import us.hebi.matlab.mat.util.Tasks.IoTask;
+import us.hebi.matlab.mat.util.ZlibPool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static us.hebi.matlab.mat.format.Mat5Reader.*;
+
+/**
+ * Inflates compressed entries that consist of independent blocks, i.e., blocks that
+ * have been written by a {@link BlockDeflater} without a preset dictionary. Each block
+ * starts at a full flush point, so it can be inflated by a separate raw inflater and
+ * a single large entry can be decompressed by multiple threads.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+final class BlockInflater {
+
+    /**
+     * Inflates all blocks into the remaining space of the target buffer. Blocks get
+     * inflated concurrently if an executor service is available.
+     *
+     * @param source          random access source that contains the entry
+     * @param position        position of the zlib stream, i.e., after the 'Compressed' tag
+     * @param entry           index entry that contains the block offsets
+     * @param target          buffer with the uncompressed size remaining
+     * @param executorService executor service, or null for inflating in the calling thread
+     * @throws IOException if the data does not match the index
+     */
+    static void inflate(AbstractSource source, long position, Mat5Index.Entry entry, ByteBuffer target, ExecutorService executorService) throws IOException {
+        final long[] offsets = entry.blockOffsets;
+        final int numBlocks = offsets.length;
+        final long zlibEnd = Casts.uint32(entry.numBytes) - ZLIB_TRAILER_SIZE;
+        if (target.remaining() != entry.uncompressedSize
+                || (long) entry.blockSize * (numBlocks - 1) >= entry.uncompressedSize
+                || (long) entry.blockSize * numBlocks < entry.uncompressedSize)
+            throw readError("Blocks of '%s' do not match the uncompressed size", entry.header.getName());
+
+        List<Future<Void>> tasks = new ArrayList<Future<Void>>(numBlocks);
+        boolean success = false;
+        try {
+            for (int i = 0; i < numBlocks; i++) {
+                long start = offsets[i];
+                long end = i + 1 < numBlocks ? offsets[i + 1] : zlibEnd;
+                if (start < 0 || end < start || end > zlibEnd)
+                    throw readError("Block offsets of '%s' are out of bounds", entry.header.getName());
+
+                // Each block inflates into its own region of the target
+                ByteBuffer output = target.duplicate();
+                output.position(target.position() + i * entry.blockSize);
+                output.limit(Math.min(output.position() + entry.blockSize, target.limit()));
+
+                final int numBytes = Casts.sint32(end - start);
+                final Source input = source.slice(position + start, numBytes);
+                final ByteBuffer blockOutput = output.slice();
+                IoTask<Void> task = new IoTask<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try {
+                            inflateBlock(input, numBytes, blockOutput);
+                            return null;
+                        } finally {
+                            input.close();
+                        }
+                    }
+                };
+                tasks.add(executorService != null ? executorService.submit(task) : Tasks.wrapAsFuture(task.call()));
+            }
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+            success = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for inflated blocks");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            // Don't start remaining blocks if any of them failed
+            if (!success) {
+                for (Future<Void> task : tasks) {
+                    task.cancel(false);
+                }
+            }
+        }
+        target.position(target.limit());
+    }
+
+    private static void inflateBlock(Source source, int numBytes, ByteBuffer output) throws IOException {
+        byte[] input = new byte[numBytes];
+        source.readBytes(input, 0, numBytes);
+
+        Inflater inflater = ZlibPool.getDefault().borrowInflater(true);
+        try {
+            inflater.setInput(input);
+            byte[] chunk = null;
+            while (output.hasRemaining()) {
+                final int n;
+                if (output.hasArray()) {
+                    n = inflater.inflate(output.array(), output.arrayOffset() + output.position(), output.remaining());
+                    output.position(output.position() + n);
+                } else if (Inflater11R.isAvailable()) {
+                    n = Inflater11R.inflate(inflater, output);
+                } else {
+                    if (chunk == null)
+                        chunk = new byte[Math.min(output.remaining(), 64 * 1024)];
+                    n = inflater.inflate(chunk, 0, Math.min(output.remaining(), chunk.length));
+                    output.put(chunk, 0, n);
+                }
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    throw readError("Compressed block ended before reaching the expected size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            ZlibPool.getDefault().release(inflater, true);
+        }
+    }
+
+    private BlockInflater() {
+    }
+
+    private static final int ZLIB_TRAILER_SIZE = 4;
+
+}
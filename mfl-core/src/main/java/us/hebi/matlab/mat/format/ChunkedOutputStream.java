@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.Sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Output stream that collects data in a chain of fixed size buffers from a
+ * buffer allocator. This lets data of unknown size be held in memory without
+ * requiring a contiguous buffer or copying when it grows. The buffers get
+ * returned to the allocator on close.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+class ChunkedOutputStream extends OutputStream {
+
+    ChunkedOutputStream(BufferAllocator bufferAllocator, int chunkSize) {
+        checkArgument(chunkSize > 0, "chunk size needs to be positive");
+        this.bufferAllocator = checkNotNull(bufferAllocator);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        nextChunk().put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer chunk = nextChunk();
+            int n = Math.min(length, chunk.remaining());
+            chunk.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * @return number of bytes that have been written
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Copies the written bytes to the sink
+     *
+     * @param sink target sink
+     * @throws IOException if writing to the sink fails
+     */
+    void writeTo(Sink sink) throws IOException {
+        checkState(!closed, "stream has already been closed");
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer data = chunk.duplicate();
+            data.flip();
+            sink.writeByteBuffer(data);
+        }
+    }
+
+    /**
+     * Releases all buffers. May be called more than once.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            bufferAllocator.release(chunk);
+        }
+        chunks.clear();
+    }
+
+    private ByteBuffer nextChunk() {
+        checkState(!closed, "stream has already been closed");
+        if (current == null || !current.hasRemaining()) {
+            current = bufferAllocator.allocate(chunkSize);
+            chunks.add(current);
+        }
+        return current;
+    }
+
+    private final BufferAllocator bufferAllocator;
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private ByteBuffer current = null;
+    private long size = 0;
+    private boolean closed = false;
+
+}
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.Array;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for choosing the deflate level of each root entry, e.g., so that data
+ * that barely compresses (noise-like floating point values or already compressed
+ * image data) gets stored without spending time on compression.
+ * <p>
+ * Policies may inspect the beginning of the serialized entry. Entries that are
+ * written concurrently get evaluated by the thread that submits them, so the sample
+ * size should be kept small. Implementations must be thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ * @see SamplingCompressionPolicy
+ */
+public interface CompressionPolicy {
+
+    /**
+     * @return max number of serialized bytes that get passed to the policy, or zero if no sample is needed
+     */
+    int getSampleSize();
+
+    /**
+     * Chooses the compression of a root entry
+     *
+     * @param name   name of the entry
+     * @param array  value of the entry
+     * @param sample serialized prefix of the entry including the matrix tag in the sink's byte order. Entries
+     *               that are smaller than the sample size are contained in their entirety. Null if no sample was
+     *               requested.
+     * @return deflate level [0-9], Deflater.NO_COMPRESSION to store the entry uncompressed
+     */
+    int getDeflateLevel(String name, Array array, ByteBuffer sample);
+
+}
@@ -25,9 +25,11 @@ import us.hebi.matlab.mat.util.Casts;
 import us.hebi.matlab.mat.util.Unsafe9R;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
 
 import static us.hebi.matlab.mat.types.AbstractArray.*;
 import static us.hebi.matlab.mat.util.Preconditions.*;
@@ -55,6 +57,229 @@ public class Mat5 {
         }
     }
 
+    /**
+     * Reads a file using a pipeline in which a dedicated thread reads the file from disk
+     * into bounded buffers, the calling thread copies compressed root entries out of them,
+     * and the executor inflates previously read entries. Unlike {@link #readFromFile(File)},
+     * this does not wait for the entire file to be loaded before starting to decompress, and
+     * disk access continues while the calling thread waits for the executor, which helps with
+     * slow disks and cold caches.
+     *
+     * @param file     input file
+     * @param executor executor that inflates compressed entries
+     * @return mat file
+     * @throws IOException if the file can't be read
+     */
+    public static Mat5File readFromFile(File file, ExecutorService executor) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        Source source = Sources.openReadAheadFile(file, DEFAULT_DISK_READ_AHEAD_BYTES);
+        try {
+            return Mat5.newReader(source)
+                    .enableConcurrentDecompression(executor, DEFAULT_READ_AHEAD_BYTES)
+                    .readMat();
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Reads a memory mapped file with concurrent decompression. Entries that were written with
+     * independent blocks (see {@link Mat5Writer#enableIndependentBlockCompression(int)}) get split
+     * into blocks that are inflated concurrently if the index file exists.
+     *
+     * @param file      input file
+     * @param indexFile sidecar index, e.g., {@link Mat5Index#getSidecarFile(File)}
+     * @param executor  executor that inflates compressed entries
+     * @return mat file
+     * @throws IOException if the file can't be read
+     */
+    public static Mat5File readFromFile(File file, File indexFile, ExecutorService executor) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        checkNotNull(indexFile, "Index file can't be empty");
+        Source source = Sources.openFile(file);
+        try {
+            Mat5Reader reader = Mat5.newReader(source).enableConcurrentDecompression(executor);
+            if (indexFile.exists()) {
+                Source indexSource = Sources.openStreamingFile(indexFile);
+                try {
+                    reader.setIndex(Mat5Index.readFrom(indexSource));
+                } finally {
+                    indexSource.close();
+                }
+            }
+            return reader.readMat();
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Memory maps a file and reads it such that numeric arrays of uncompressed entries (e.g.
+     * files saved with '-v6') share memory with the mapping rather than being copied. Compressed
+     * entries get read normally. The shared arrays are read-only.
+     * <p>
+     * The file remains mapped until the returned MatFile gets closed, so none of its arrays
+     * may be accessed after closing.
+     *
+     * @param file input file
+     * @return mat file backed by the mapped file
+     * @throws IOException if the file can't be read
+     * @see Mat5Reader#enableZeroCopy()
+     */
+    public static Mat5File readFromFileZeroCopy(File file) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        Source source = Sources.openFile(file, MappingPolicy.LAZY);
+        try {
+            Mat5File matFile = Mat5.newReader(source).enableZeroCopy().readMat();
+            matFile.closeWithFile(source);
+            return matFile;
+        } catch (IOException ioe) {
+            source.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            source.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Same as {@link #readFromFileZeroCopy(File)}, but the file gets mapped with write access so
+     * that modifying the values of shared numeric arrays updates the file in place. This lets a few
+     * values of a large uncompressed (e.g. '-v6') file be changed without re-serializing it. The
+     * byte order of the file is taken care of automatically.
+     * <p>
+     * Only values of numeric arrays that are stored uncompressed can be modified. Values that can't
+     * be represented by the stored type (e.g. a double matrix that MATLAB stored as uint8) are rejected.
+     * Other numeric arrays are read-only, and structural changes such as adding fields or variables
+     * are not written back. Modifications get written to disk when the returned MatFile gets closed.
+     * <p>
+     * Files of any size are supported, but each shared array is limited to the 2 GB that fit into a
+     * single buffer. Arrays that cross the boundary between two mapped segments of a file larger than
+     * 2 GB get mapped separately.
+     *
+     * @param file input file
+     * @return mat file backed by the mapped file
+     * @throws IOException if the file can't be read
+     */
+    public static Mat5File openFileForUpdate(File file) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        Source source = Sources.openFileForUpdate(file);
+        try {
+            Mat5File matFile = Mat5.newReader(source).enableWriteThrough().readMat();
+            matFile.closeWithFile(source);
+            return matFile;
+        } catch (IOException ioe) {
+            source.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            source.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Lists the variables of a file similar to MATLAB's 'whos -file'. Only the headers of the
+     * root entries get read, and everything else gets skipped without being loaded from disk.
+     *
+     * @param file input file
+     * @return index with the header as well as the stored and uncompressed sizes of each root entry
+     * @throws IOException if the file or its root-level structure can't be read
+     * @see Mat5Reader#readIndex()
+     */
+    public static Mat5Index readIndexFromFile(File file) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        Source source = Sources.openStreamingFile(file);
+        try {
+            return Mat5.newReader(source).readIndex();
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Opens a file and only reads the root-level structure. The content of each entry gets
+     * read (and inflated) when it is accessed for the first time. The file remains open
+     * until the returned MatFile gets closed.
+     *
+     * @param file input file
+     * @return lazily loaded mat file
+     * @throws IOException if the file or its root-level structure can't be read
+     */
+    public static Mat5LazyFile readFromFileLazily(File file) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        Source source = Sources.openFile(file, MappingPolicy.TOUCH_AHEAD);
+        try {
+            Mat5LazyFile matFile = Mat5.newReader(source).readMatLazily();
+            matFile.closeWithFile(source);
+            return matFile;
+        } catch (IOException ioe) {
+            source.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            source.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Opens a file lazily using a sidecar index. If the index file exists, only the file header
+     * gets read upfront. Otherwise, the root entries get scanned and the resulting index gets
+     * stored for subsequent calls.
+     *
+     * @param file      input file
+     * @param indexFile sidecar index, e.g., {@link Mat5Index#getSidecarFile(File)}
+     * @return lazily loaded mat file
+     * @throws IOException if the file, the index, or the root-level structure can't be read, or if
+     *                     the index does not match the file, e.g., because entries have been appended
+     */
+    public static Mat5LazyFile readFromFileLazily(File file, File indexFile) throws IOException {
+        checkNotNull(file, "Input file can't be empty");
+        checkNotNull(indexFile, "Index file can't be empty");
+
+        // Build on demand
+        if (!indexFile.exists()) {
+            // Closing the MatFile also closes the underlying source
+            Mat5LazyFile matFile = readFromFileLazily(file);
+            try {
+                Sink sink = Sinks.newStreamingFile(indexFile);
+                try {
+                    matFile.getIndex().writeTo(sink);
+                } finally {
+                    sink.close();
+                }
+                return matFile;
+            } catch (IOException ioe) {
+                matFile.close();
+                throw ioe;
+            } catch (RuntimeException re) {
+                matFile.close();
+                throw re;
+            }
+        }
+
+        // Use existing index
+        Mat5Index index;
+        Source indexSource = Sources.openStreamingFile(indexFile);
+        try {
+            index = Mat5Index.readFrom(indexSource);
+        } finally {
+            indexSource.close();
+        }
+
+        Source source = Sources.openFile(file, MappingPolicy.TOUCH_AHEAD);
+        try {
+            Mat5LazyFile matFile = Mat5.newReader(source).readMatLazily(index);
+            matFile.closeWithFile(source);
+            return matFile;
+        } catch (IOException ioe) {
+            source.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            source.close();
+            throw re;
+        }
+    }
+
     public static File writeToFile(MatFile mat, String fileName) throws IOException {
         return writeToFile(mat, new File(checkNotNull(fileName, "File can't be empty")));
     }
@@ -83,6 +308,86 @@ public class Mat5 {
 
     }
 
+    /**
+     * Appends the entries of a MatFile to the end of an existing MAT file without rewriting the
+     * existing content. The header of the existing file gets validated, and the new entries get
+     * written in the byte order of the existing file.
+     * <p>
+     * If the existing file ends with a subsystem (e.g. because it contains MATLAB objects), the
+     * subsystem gets moved behind the new entries and the offset in the header gets updated. The
+     * appended entries themselves can't contain objects that require a subsystem. Note that the
+     * file may be left in a corrupted state if moving the subsystem gets interrupted.
+     *
+     * @param mat  entries to be appended
+     * @param file existing MAT file
+     * @return file
+     * @throws IOException if the existing file can't be read or written
+     */
+    public static File appendToFile(MatFile mat, File file) throws IOException {
+        checkNotNull(mat, "MatFile can't be empty");
+        checkNotNull(file, "Output file can't be empty");
+        checkArgument(mat.getSubsystem() == null, "Appending entries that require a subsystem is not supported");
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+
+        // Find the end of the existing entries and a trailing subsystem
+        final ByteOrder order;
+        final long subsysStart;
+        long end;
+        Mat5Type subsysType = null;
+        int subsysNumBytes = 0;
+        byte[] subsysContent = null; // including padding
+        Source source = Sources.openStreamingFile(file);
+        try {
+            source.order(ByteOrder.nativeOrder());
+            Mat5File header = Mat5File.readFileHeader(source);
+            order = header.getByteOrder();
+            subsysStart = header.getSubsysOffset();
+            source.order(order);
+
+            end = source.getPosition();
+            for (Mat5Tag tag = Mat5Tag.readTagOrNull(source); tag != null; tag = Mat5Tag.readTagOrNull(source)) {
+                int numBytes = tag.getNumBytes() + tag.getPadding();
+                if (end == subsysStart) {
+                    subsysType = tag.getType();
+                    subsysNumBytes = tag.getNumBytes();
+                    subsysContent = new byte[numBytes];
+                    source.readBytes(subsysContent, 0, numBytes);
+                } else {
+                    subsysContent = null;
+                    source.skip(numBytes);
+                }
+                end = source.getPosition();
+            }
+            if (end != file.length())
+                throw Mat5Reader.readError("Found %d unexpected bytes at the end of '%s'", file.length() - end, file.getName());
+        } finally {
+            source.close();
+        }
+
+        // Overwrite the subsystem and write it again after the new entries
+        Sink sink = Sinks.newStreamingFile(file, true).order(order);
+        try {
+            if (subsysContent != null)
+                sink.position(subsysStart);
+            Mat5Writer writer = newWriter(sink);
+            for (MatFile.Entry entry : mat.getEntries()) {
+                writer.writeEntry(entry);
+            }
+            writer.flush();
+
+            if (subsysContent != null) {
+                long position = sink.position();
+                subsysType.writeTag(subsysNumBytes, false, sink);
+                sink.writeBytes(subsysContent, 0, subsysContent.length);
+                Mat5File.updateSubsysOffset(0, position, sink);
+            }
+            return file;
+        } finally {
+            sink.close();
+        }
+    }
+
     public static Mat5File newMatFile() {
         return new Mat5File();
     }
@@ -225,11 +530,52 @@ public class Mat5 {
         return newNumerical(dims, type, false, true);
     }
 
+    public static Mat5StreamingMatrix newStreamingMatrix(int numCols) {
+        return newStreamingMatrix(numCols, MatlabType.Double);
+    }
+
+    public static Mat5StreamingMatrix newStreamingMatrix(int numCols, MatlabType type) {
+        return newStreamingNumerical(numCols, type, false, false, null, DEFAULT_STREAMING_BLOCK_SIZE);
+    }
+
+    public static Mat5StreamingMatrix newStreamingComplex(int numCols, MatlabType type) {
+        return newStreamingNumerical(numCols, type, false, true, null, DEFAULT_STREAMING_BLOCK_SIZE);
+    }
+
+    public static Mat5StreamingMatrix newStreamingLogical(int numCols) {
+        return newStreamingNumerical(numCols, MatlabType.Int8, true, false, null, DEFAULT_STREAMING_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a matrix with a fixed number of columns that grows by appending rows. Blocks of
+     * rows get buffered in memory and spill to a temporary file once they are full.
+     *
+     * @param numCols    number of columns
+     * @param type       numeric type
+     * @param logical    true if the matrix represents logical values
+     * @param complex    true if the matrix has an imaginary part
+     * @param folder     folder for the temporary file, or null for the default temporary folder
+     * @param blockBytes max number of bytes that get buffered in memory
+     * @return streaming matrix that needs to be closed to delete the temporary file
+     */
+    public static Mat5StreamingMatrix newStreamingNumerical(int numCols, MatlabType type, boolean logical, boolean complex, File folder, int blockBytes) {
+        return new Mat5StreamingMatrix(numCols, type, logical, complex, folder, blockBytes, getDefaultBufferAllocator());
+    }
+
+    /**
+     * Creates a logger that stores samples of multiple channels in a series of MAT files
+     *
+     * @param folder          target folder
+     * @param prefix          file name prefix of each segment
+     * @param executorService executor that compresses and writes finished segments
+     * @return logger
+     */
+    public static Mat5Logger newLogger(File folder, String prefix, ExecutorService executorService) {
+        return new Mat5Logger(folder, prefix, executorService);
+    }
+
     public static int getSerializedSize(String name, Array array) {
-        if (array instanceof Mat5Serializable) {
-            return ((Mat5Serializable) array).getMat5Size(name);
-        }
-        throw new IllegalArgumentException("Array does not support the MAT5 format");
+        return Mat5WriteUtil.computeArraySize(name, array);
     }
 
     private static Matrix newNumerical(int[] dims, MatlabType type, boolean logical, boolean complex) {
@@ -305,4 +651,19 @@ public class Mat5 {
     public static final int FILE_HEADER_SIZE = 116 + 8 + 2 + 2;
     public static final int REDUCED_FILE_HEADER_SIZE = 2 + 2 + 4 /* padding */;
 
+    /**
+     * Max number of compressed bytes that pipelined readers buffer ahead of the inflating threads
+     */
+    public static final long DEFAULT_READ_AHEAD_BYTES = 128 * 1024 * 1024;
+
+    /**
+     * Max number of bytes that pipelined readers load from disk ahead of the parsing thread
+     */
+    public static final long DEFAULT_DISK_READ_AHEAD_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Number of bytes that streaming matrices buffer in memory before spilling to a temporary file
+     */
+    public static final int DEFAULT_STREAMING_BLOCK_SIZE = 1024 * 1024;
+
 }
@@ -24,10 +24,13 @@ import us.hebi.matlab.mat.types.AbstractMatFile;
 import us.hebi.matlab.mat.types.Sink;
 import us.hebi.matlab.mat.types.Source;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import static us.hebi.matlab.mat.format.Mat5.*;
 import static us.hebi.matlab.mat.format.Mat5WriteUtil.*;
@@ -222,6 +225,15 @@ public class Mat5File extends AbstractMatFile {
         this.version = version;
     }
 
+    /**
+     * Creates an empty file with the same header information
+     *
+     * @param header file header
+     */
+    Mat5File(Mat5File header) {
+        this(header.reduced, header.description, header.subsysOffset, header.byteOrder, header.version);
+    }
+
     public String getDescription() {
         return description;
     }
@@ -285,6 +297,38 @@ public class Mat5File extends AbstractMatFile {
         return this;
     }
 
+    /**
+     * Registers a resource whose lifetime is bound to this file, e.g., the
+     * source of lazily loaded entries. Resources get closed after all
+     * contained arrays have been closed.
+     *
+     * @param resource resource
+     */
+    void closeWithFile(Closeable resource) {
+        resources.add(checkNotNull(resource));
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException lastError = null;
+        try {
+            super.close();
+        } catch (IOException ioe) {
+            lastError = ioe;
+        }
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException ioe) {
+                lastError = ioe;
+            }
+        }
+        resources.clear();
+        if (lastError != null)
+            throw lastError;
+    }
+
+    private final List<Closeable> resources = new ArrayList<Closeable>(0);
     private final String description;
     private final long subsysOffset;
     private final ByteOrder byteOrder;
@@ -0,0 +1,342 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.format.Mat5Reader.EntryHeader;
+import us.hebi.matlab.mat.types.Array;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Opaque;
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.util.Casts;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static us.hebi.matlab.mat.util.Bytes.*;
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Compact index of the root entries inside a MAT file. It can be stored
+ * next to the MAT file (sidecar) so that a reader can find a single variable
+ * without having to walk through all root entries first.
+ * <p>
+ * The index gets created by {@link Mat5Writer#enableIndex()} while writing, or
+ * by scanning an existing file via {@link Mat5Reader#readIndex()}. It can be
+ * consumed by {@link Mat5Reader#readMatLazily(Mat5Index)}.
+ * <p>
+ * --- Sidecar Format ---
+ * [8 byte identifier] ("MAT5IDX" + version)
+ * [2 byte reserved]
+ * [2 byte endian indicator]
+ * [4 byte number of entries]
+ * [4 byte description length] [n byte ascii description of the MAT file header]
+ * [8 byte end offset of the last root entry relative to the start of the MAT file]
+ * Entries:
+ * [8 byte offset of the root tag relative to the start of the MAT file]
+ * [4 byte number of stored bytes after the root tag]
+ * [8 byte number of uncompressed bytes including the matrix tag]
+ * [4 byte flags] (compressed, subsystem, blocks)
+ * [2x4 byte array flags]
+ * [4 byte number of dimensions] [n x 4 byte dimensions]
+ * [4 byte name length] [n byte ascii name]
+ * [4 byte block size] [4 byte number of blocks] [n x 8 byte block offsets] (only if flagged as blocks)
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public final class Mat5Index {
+
+    public static final class Entry {
+
+        /**
+         * @return header of the array that can be used for filtering
+         */
+        public EntryHeader getHeader() {
+            return header;
+        }
+
+        /**
+         * @return offset of the root tag relative to the beginning of the MAT file
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return number of bytes that are stored in the file including the root tag
+         */
+        public long getStoredSize() {
+            return Mat5.MATRIX_TAG_SIZE + Casts.uint32(numBytes);
+        }
+
+        /**
+         * @return number of bytes of the uncompressed matrix including the matrix tag
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public boolean isSubsystem() {
+            return subsystem;
+        }
+
+        /**
+         * Compressed entries that were written by {@link Mat5Writer#enableIndependentBlockCompression(int)}
+         * consist of blocks that can be inflated concurrently.
+         *
+         * @return number of independently compressed blocks, or zero if the entry needs to be inflated as a whole
+         */
+        public int getNumBlocks() {
+            return blockOffsets == null ? 0 : blockOffsets.length;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "header=" + header +
+                    ", offset=" + offset +
+                    ", storedSize=" + getStoredSize() +
+                    ", uncompressedSize=" + uncompressedSize +
+                    (compressed ? ", compressed" : "") +
+                    (subsystem ? ", subsystem" : "") +
+                    (blockOffsets != null ? ", blocks=" + blockOffsets.length : "") +
+                    '}';
+        }
+
+        Entry(EntryHeader header, long offset, int numBytes, long uncompressedSize, boolean compressed, boolean subsystem) {
+            this(header, offset, numBytes, uncompressedSize, compressed, subsystem, 0, null);
+        }
+
+        Entry(EntryHeader header, long offset, int numBytes, long uncompressedSize, boolean compressed, boolean subsystem,
+              int blockSize, long[] blockOffsets) {
+            checkArgument(blockOffsets == null || (compressed && blockSize > 0), "Blocks require a compressed entry");
+            this.header = checkNotNull(header);
+            this.offset = offset;
+            this.numBytes = numBytes;
+            this.uncompressedSize = uncompressedSize;
+            this.compressed = compressed;
+            this.subsystem = subsystem;
+            this.blockSize = blockSize;
+            this.blockOffsets = blockOffsets;
+        }
+
+        final EntryHeader header;
+        final long offset;
+        final int numBytes;
+        final long uncompressedSize;
+        final boolean compressed;
+        final boolean subsystem;
+        final int blockSize;
+        final long[] blockOffsets; // relative to the start of the zlib stream
+
+    }
+
+    /**
+     * @param matFile MAT file
+     * @return default location of the sidecar index for the given file
+     */
+    public static File getSidecarFile(File matFile) {
+        return new File(checkNotNull(matFile).getPath() + SIDECAR_EXTENSION);
+    }
+
+    public static Mat5Index readFrom(Source source) throws IOException {
+        // Identifier
+        byte[] identifier = new byte[IDENTIFIER.length];
+        source.readBytes(identifier, 0, identifier.length);
+        for (int i = 0; i < identifier.length; i++) {
+            if (identifier[i] != IDENTIFIER[i])
+                throw new IllegalArgumentException("This is not a MAT5 index");
+        }
+        source.skip(2); // reserved
+
+        // Endian indicator
+        source.order(ByteOrder.nativeOrder());
+        short endianIndicator = source.readShort();
+        switch (endianIndicator) {
+            case 'M' << 8 | 'I': // order is correct
+                break;
+            case 'I' << 8 | 'M': // order needs to be reversed
+                source.order(reverseByteOrder(source.order()));
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid endian indicator");
+        }
+
+        int numEntries = source.readInt();
+        String description = readAscii(source);
+        long endOffset = source.readLong();
+        List<Entry> entries = new ArrayList<Entry>(numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            long offset = source.readLong();
+            int numBytes = source.readInt();
+            long uncompressedSize = source.readLong();
+            int flags = source.readInt();
+            int[] arrayFlags = readInts(source, 2);
+            int[] dimensions = readInts(source, source.readInt());
+            String name = readAscii(source);
+            int blockSize = 0;
+            long[] blockOffsets = null;
+            if ((flags & FLAG_BLOCKS) != 0) {
+                blockSize = source.readInt();
+                int numBlocks = source.readInt();
+                checkArgument(blockSize > 0 && numBlocks >= 0, "Invalid index length");
+                blockOffsets = new long[numBlocks];
+                source.readLongs(blockOffsets, 0, numBlocks);
+            }
+
+            MatlabType type = Mat5ArrayFlags.getType(arrayFlags);
+            EntryHeader header = new EntryHeader(arrayFlags, type, dimensions, name);
+            entries.add(new Entry(header, offset, numBytes, uncompressedSize,
+                    (flags & FLAG_COMPRESSED) != 0, (flags & FLAG_SUBSYSTEM) != 0, blockSize, blockOffsets));
+        }
+        return new Mat5Index(description, endOffset, entries);
+    }
+
+    public Mat5Index writeTo(Sink sink) throws IOException {
+        sink.writeBytes(IDENTIFIER, 0, IDENTIFIER.length);
+        sink.writeShort((short) 0);
+        sink.writeShort((short) ('M' << 8 | 'I'));
+        sink.writeInt(entries.size());
+        writeAscii(description, sink);
+        sink.writeLong(endOffset);
+        for (Entry entry : entries) {
+            sink.writeLong(entry.offset);
+            sink.writeInt(entry.numBytes);
+            sink.writeLong(entry.uncompressedSize);
+            sink.writeInt((entry.compressed ? FLAG_COMPRESSED : 0)
+                    | (entry.subsystem ? FLAG_SUBSYSTEM : 0)
+                    | (entry.blockOffsets != null ? FLAG_BLOCKS : 0));
+            sink.writeInts(entry.header.arrayFlags, 0, 2);
+            sink.writeInt(entry.header.dimensions.length);
+            sink.writeInts(entry.header.dimensions, 0, entry.header.dimensions.length);
+            writeAscii(entry.header.name, sink);
+            if (entry.blockOffsets != null) {
+                sink.writeInt(entry.blockSize);
+                sink.writeInt(entry.blockOffsets.length);
+                sink.writeLongs(entry.blockOffsets, 0, entry.blockOffsets.length);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return description of the MAT file header that is used to detect stale indices
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return number of bytes from the start of the MAT file to the end of the last root entry, which is
+     * used to detect indices of files that have been modified, e.g., by appending entries
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return all indexed root entries including the (optional) subsystem in file order
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param name name of a root entry
+     * @return first entry with a matching name, or null if there is none
+     */
+    public Entry getEntry(String name) {
+        for (Entry entry : entries) {
+            if (!entry.subsystem && entry.header.name.equals(name))
+                return entry;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Mat5Index{" +
+                "description='" + description + '\'' +
+                ", endOffset=" + endOffset +
+                ", entries=" + entries +
+                '}';
+    }
+
+    /**
+     * Creates the header that a reader would find for the given root array
+     */
+    static EntryHeader createHeader(String name, boolean isGlobal, Array array) {
+        if (array instanceof Opaque) {
+            int[] arrayFlags = Mat5ArrayFlags.forOpaque(isGlobal, (Opaque) array);
+            return new EntryHeader(arrayFlags, MatlabType.Opaque, new int[]{1, 1}, name);
+        }
+        int[] arrayFlags = Mat5ArrayFlags.forArray(isGlobal, array);
+        return new EntryHeader(arrayFlags, Mat5ArrayFlags.getType(arrayFlags), array.getDimensions(),
+                Mat5WriteUtil.getLimitedName(name));
+    }
+
+    Mat5Index(String description, long endOffset, List<Entry> entries) {
+        this.description = checkNotNull(description);
+        this.endOffset = endOffset;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    private static int[] readInts(Source source, int length) throws IOException {
+        checkArgument(length >= 0, "Invalid index length");
+        int[] values = new int[length];
+        source.readInts(values, 0, length);
+        return values;
+    }
+
+    private static String readAscii(Source source) throws IOException {
+        int length = source.readInt();
+        checkArgument(length >= 0, "Invalid index length");
+        byte[] bytes = new byte[length];
+        source.readBytes(bytes, 0, length);
+        return new String(bytes, Charsets.US_ASCII);
+    }
+
+    private static void writeAscii(String value, Sink sink) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.US_ASCII);
+        sink.writeInt(bytes.length);
+        sink.writeBytes(bytes, 0, bytes.length);
+    }
+
+    private final String description;
+    private final long endOffset;
+    private final List<Entry> entries;
+
+    private static final byte[] IDENTIFIER = new byte[]{'M', 'A', 'T', '5', 'I', 'D', 'X', 2};
+    private static final String SIDECAR_EXTENSION = ".idx";
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int FLAG_SUBSYSTEM = 1 << 1;
+    private static final int FLAG_BLOCKS = 1 << 2;
+
+}
@@ -0,0 +1,251 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.format.Mat5Reader.EntryHeader;
+import us.hebi.matlab.mat.types.Array;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * MAT file that initially only knows the headers of the root entries and
+ * reads the content of an entry from the underlying source when it gets
+ * accessed for the first time. Compressed entries get inflated on demand,
+ * so accessing a single variable only pays for that variable.
+ * <p>
+ * Operations that need all entries (e.g. iterating over entries or writing)
+ * load all remaining entries first. Loading is synchronized, so the file may
+ * be accessed from multiple threads. The underlying source needs to remain
+ * open until the file gets closed.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class Mat5LazyFile extends Mat5File {
+
+    Mat5LazyFile(Mat5File header, Mat5Reader reader) {
+        super(header);
+        this.reader = reader;
+    }
+
+    /**
+     * @return headers of all root entries in file order without loading any content
+     */
+    public synchronized List<EntryHeader> getEntryHeaders() {
+        List<EntryHeader> headers = new ArrayList<EntryHeader>(indexEntries.size());
+        for (Mat5Index.Entry entry : indexEntries) {
+            if (!entry.isSubsystem())
+                headers.add(entry.getHeader());
+        }
+        return headers;
+    }
+
+    /**
+     * Returns an index of the root entries that can be stored next to the file. Entries
+     * that were rejected by an entry filter are not part of the index.
+     *
+     * @return index of all known root entries including the (optional) subsystem
+     */
+    public synchronized Mat5Index getIndex() {
+        return new Mat5Index(getDescription(), endOffset, new ArrayList<Mat5Index.Entry>(indexEntries));
+    }
+
+    /**
+     * @param name name of a root entry
+     * @return true if the content of the entry has already been read
+     */
+    public synchronized boolean isLoaded(String name) {
+        LazyEntry entry = findLazyEntry(name);
+        return entry == null ? lookup.containsKey(name) : entry.loaded != null;
+    }
+
+    @Override
+    public synchronized <T extends Array> T getArray(String name) {
+        LazyEntry entry = findLazyEntry(name);
+        if (entry != null)
+            return getValue(load(entry));
+        return super.getArray(name);
+    }
+
+    @Override
+    public synchronized <T extends Array> T getArray(int index) {
+        if (!loadedAll)
+            return getValue(load(lazyEntries.get(index)));
+        return super.getArray(index);
+    }
+
+    @Override
+    public synchronized int getNumEntries() {
+        return loadedAll ? super.getNumEntries() : lazyEntries.size();
+    }
+
+    @Override
+    public synchronized Iterable<Entry> getEntries() {
+        loadAll();
+        return super.getEntries();
+    }
+
+    @Override
+    public synchronized Mat5File addEntry(Entry entry) {
+        // The subsystem gets added during the initial scan and does not change the order
+        if (!(entry.getValue() instanceof Mat5Subsystem))
+            loadAll();
+        return super.addEntry(entry);
+    }
+
+    @Override
+    public synchronized long getUncompressedSerializedSize() {
+        loadAll();
+        return super.getUncompressedSerializedSize();
+    }
+
+    @Override
+    public synchronized void clear() {
+        lazyEntries.clear();
+        lazyLookup.clear();
+        loadedAll = true;
+        super.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // Entries that were loaded individually are not part of the entry list yet
+        IOException lastError = null;
+        if (!loadedAll) {
+            for (LazyEntry entry : lazyEntries) {
+                try {
+                    if (entry.loaded != null)
+                        entry.loaded.getValue().close();
+                } catch (IOException ioe) {
+                    lastError = ioe;
+                }
+            }
+            lazyEntries.clear();
+            loadedAll = true;
+        }
+        try {
+            super.close();
+        } catch (IOException ioe) {
+            lastError = ioe;
+        }
+        if (lastError != null)
+            throw lastError;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (loadedAll)
+            return super.toString();
+        return "Mat5LazyFile{" +
+                "description='" + getDescription() + '\'' +
+                ", subsysOffset=" + getSubsysOffset() +
+                ", byteOrder=" + getByteOrder() +
+                ", version=" + getVersion() +
+                "}\n" + getEntryHeaders();
+    }
+
+    void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    void addToIndex(Mat5Index.Entry entry) {
+        indexEntries.add(entry);
+    }
+
+    void addLazyEntry(LazyEntry entry) {
+        lazyEntries.add(entry);
+        if (!lazyLookup.containsKey(entry.header.getName()))
+            lazyLookup.put(entry.header.getName(), entry);
+    }
+
+    private LazyEntry findLazyEntry(String name) {
+        if (loadedAll)
+            return null;
+
+        // Fast lookup (case sensitive)
+        LazyEntry entry = lazyLookup.get(name);
+        if (entry != null)
+            return entry;
+
+        // Slow fallback (not case sensitive)
+        for (LazyEntry lazyEntry : lazyEntries) {
+            if (name.equalsIgnoreCase(lazyEntry.header.getName()))
+                return lazyEntry;
+        }
+        return null;
+    }
+
+    private Entry load(LazyEntry entry) {
+        if (entry.loaded == null) {
+            try {
+                Mat5Subsystem subsystem = getSubsystem() == null ? null : (Mat5Subsystem) getSubsystem().getValue();
+                entry.loaded = reader.readLazyEntry(entry, false, subsystem);
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Failed to read entry: " + entry.header.getName(), ioe);
+            }
+        }
+        return entry.loaded;
+    }
+
+    private void loadAll() {
+        if (loadedAll)
+            return;
+        for (LazyEntry entry : lazyEntries) {
+            Entry loaded = load(entry);
+            entries.add(loaded);
+            lookup.put(loaded.getName(), loaded.getValue());
+        }
+        lazyEntries.clear();
+        lazyLookup.clear();
+        loadedAll = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Array> T getValue(Entry entry) {
+        return (T) entry.getValue();
+    }
+
+    static class LazyEntry {
+
+        LazyEntry(Mat5Index.Entry index, long position) {
+            this.index = index;
+            this.header = index.header;
+            this.position = position;
+        }
+
+        final Mat5Index.Entry index;
+        final EntryHeader header;
+        final long position; // start of the content after the root tag
+        Entry loaded = null;
+
+    }
+
+    private final Mat5Reader reader;
+    private final List<Mat5Index.Entry> indexEntries = new ArrayList<Mat5Index.Entry>();
+    private long endOffset = 0;
+    private final List<LazyEntry> lazyEntries = new ArrayList<LazyEntry>();
+    private final HashMap<String, LazyEntry> lazyLookup = new HashMap<String, LazyEntry>();
+    private boolean loadedAll = false;
+
+}
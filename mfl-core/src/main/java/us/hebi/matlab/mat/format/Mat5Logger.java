@@ -0,0 +1,370 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.util.MemoryBudget;
+import us.hebi.matlab.mat.util.Tasks.IoTask;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Logs samples of a fixed set of channels into a series of MAT files. Each sample
+ * sets a value for every channel and gets stored in preallocated column buffers.
+ * Once the current segment reaches the maximum size or duration, the logger rolls
+ * over to a new segment and the finished segment gets compressed and written to
+ * '[prefix]-[index].mat' on a background executor. Each channel is stored as a
+ * column vector that is named after the channel.
+ * <p>
+ * Logging samples never waits for disk I/O unless the maximum number of pending
+ * segments has been reached, in which case the rollover blocks until the oldest
+ * segment has been written. Column buffers of written segments get reused, so a
+ * running logger does not allocate any memory per sample. Errors that occur in the
+ * background get thrown by the next rollover or when closing the logger.
+ * <p>
+ * Channels and limits need to be configured before logging the first sample. Logging
+ * needs to be done by a single thread.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public final class Mat5Logger implements Closeable {
+
+    Mat5Logger(File folder, String prefix, ExecutorService executorService) {
+        checkArgument(folder.isDirectory(), "invalid target folder: " + folder);
+        this.folder = folder;
+        this.prefix = checkNotNull(prefix, "prefix can't be empty");
+        this.executorService = checkNotNull(executorService, "empty executor service");
+    }
+
+    /**
+     * Adds a numeric channel that gets stored as a column vector with the given name
+     *
+     * @param name variable name
+     * @param type numeric type
+     * @return channel index for setting values
+     */
+    public int addChannel(String name, MatlabType type) {
+        checkConfigurable();
+        checkNotNull(name, "name can't be empty");
+        for (Channel channel : channels) {
+            checkArgument(!channel.name.equals(name), "duplicate channel name: " + name);
+        }
+        channels.add(new Channel(name, type));
+        return channels.size() - 1;
+    }
+
+    /**
+     * Sets the max number of uncompressed bytes per segment. The default is 64 MB.
+     *
+     * @param maxSegmentBytes max number of bytes in all column buffers
+     * @return this
+     */
+    public Mat5Logger setMaxSegmentBytes(long maxSegmentBytes) {
+        checkConfigurable();
+        checkArgument(maxSegmentBytes > 0, "segment size must be positive");
+        this.maxSegmentBytes = maxSegmentBytes;
+        return this;
+    }
+
+    /**
+     * Rolls over to a new segment once the time since the first sample of a segment
+     * exceeds the duration. By default, segments only roll over based on size.
+     *
+     * @param duration max duration of a segment
+     * @param unit     time unit
+     * @return this
+     */
+    public Mat5Logger setMaxSegmentDuration(long duration, TimeUnit unit) {
+        checkConfigurable();
+        checkArgument(duration > 0, "duration must be positive");
+        this.maxSegmentNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the max number of finished segments that may wait to be written. The
+     * memory use is bounded by the number of pending segments plus the current
+     * one. The default is 2.
+     *
+     * @param maxPendingSegments max number of segments in the queue
+     * @return this
+     */
+    public Mat5Logger setMaxPendingSegments(int maxPendingSegments) {
+        checkConfigurable();
+        checkArgument(maxPendingSegments > 0, "queue depth must be positive");
+        this.maxPendingSegments = maxPendingSegments;
+        return this;
+    }
+
+    /**
+     * @param deflateLevel deflate level of the written files
+     * @return this
+     * @see Mat5Writer#setDeflateLevel(int)
+     */
+    public Mat5Logger setDeflateLevel(int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+        return this;
+    }
+
+    public void setDouble(int channel, double value) throws IOException {
+        startSegmentIfNeeded();
+        columns[channel].setDouble(row, value);
+    }
+
+    public void setLong(int channel, long value) throws IOException {
+        startSegmentIfNeeded();
+        columns[channel].setLong(row, value);
+    }
+
+    /**
+     * Completes the current sample. Channels that were not set since the
+     * previous sample are stored as zero. Rolls over to a new segment if
+     * the current one is full.
+     *
+     * @throws IOException if a previous segment could not be written
+     */
+    public void nextSample() throws IOException {
+        startSegmentIfNeeded();
+        row++;
+        if (row == capacity || (maxSegmentNanos > 0 && System.nanoTime() - segmentStart >= maxSegmentNanos)) {
+            rollOver();
+        }
+    }
+
+    /**
+     * Hands the completed samples of the current segment to the executor. The
+     * next sample starts a new segment. Incomplete samples get discarded.
+     *
+     * @throws IOException if a previous segment could not be written
+     */
+    public void rollOver() throws IOException {
+        checkState(!closed, "Logger has already been closed");
+        checkCompletedSegments();
+        if (columns == null)
+            return;
+        if (row == 0) {
+            discardSegment();
+            return;
+        }
+
+        // Block until there is room in the queue
+        pendingSegments.acquire(1);
+
+        // Wrap the completed rows in a file that returns the buffers to the pool once it gets closed
+        final Mat5File mat = Mat5.newMatFile();
+        for (int i = 0; i < columns.length; i++) {
+            Channel channel = channels.get(i);
+            ByteBuffer buffer = columns[i].buffer;
+            buffer.limit(row * channel.tagType.bytes());
+            NumberStore store = new UniversalNumberStore(channel.tagType, buffer, channel.buffers);
+            mat.addArray(channel.name, new MatMatrix(Mat5.dims(row, 1), channel.type, false, store, null));
+        }
+        columns = null;
+
+        final File file = new File(folder, String.format("%s-%04d.mat", prefix, numSegments++));
+        final int level = deflateLevel;
+        try {
+            segments.addLast(executorService.submit(new IoTask<File>() {
+                @Override
+                public File call() throws IOException {
+                    try {
+                        Sink sink = Sinks.newStreamingFile(file);
+                        try {
+                            Mat5.newWriter(sink).setDeflateLevel(level).writeMat(mat);
+                        } finally {
+                            sink.close();
+                        }
+                        return file;
+                    } finally {
+                        mat.close();
+                        pendingSegments.release(1);
+                    }
+                }
+            }));
+        } catch (RuntimeException re) {
+            mat.close();
+            pendingSegments.release(1);
+            throw re;
+        }
+    }
+
+    /**
+     * @return files of all segments that have been written so far
+     */
+    public List<File> getWrittenFiles() {
+        return new ArrayList<File>(writtenFiles);
+    }
+
+    /**
+     * Writes the current segment and waits for all pending segments to be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            rollOver();
+            while (!segments.isEmpty()) {
+                waitForSegment(segments.pollFirst());
+            }
+        } finally {
+            closed = true;
+        }
+    }
+
+    private void checkConfigurable() {
+        checkState(columns == null && numSegments == 0, "Logger can't be configured after logging samples");
+    }
+
+    private void startSegmentIfNeeded() throws IOException {
+        if (columns != null)
+            return;
+        checkState(!closed, "Logger has already been closed");
+        checkState(!channels.isEmpty(), "Logger does not have any channels");
+
+        if (capacity == 0) {
+            long rowBytes = 0;
+            for (Channel channel : channels) {
+                rowBytes += channel.tagType.bytes();
+            }
+            capacity = (int) Math.max(1, Math.min(maxSegmentBytes / rowBytes, Integer.MAX_VALUE / Mat5Type.Double.bytes()));
+            pendingSegments = new MemoryBudget(maxPendingSegments);
+        }
+
+        columns = new UniversalNumberStore[channels.size()];
+        for (int i = 0; i < columns.length; i++) {
+            Channel channel = channels.get(i);
+            columns[i] = new UniversalNumberStore(channel.tagType, channel.buffers.allocate(capacity * channel.tagType.bytes()), channel.buffers);
+        }
+        row = 0;
+        segmentStart = System.nanoTime();
+    }
+
+    private void discardSegment() {
+        for (UniversalNumberStore column : columns) {
+            column.close();
+        }
+        columns = null;
+    }
+
+    private void checkCompletedSegments() throws IOException {
+        while (!segments.isEmpty() && segments.peekFirst().isDone()) {
+            waitForSegment(segments.pollFirst());
+        }
+    }
+
+    private void waitForSegment(Future<File> segment) throws IOException {
+        try {
+            writtenFiles.add(segment.get());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Keeps the column buffers of written segments for the following segments
+     */
+    private static class BufferPool implements BufferAllocator {
+
+        @Override
+        public ByteBuffer allocate(int numBytes) {
+            ByteBuffer buffer;
+            synchronized (pool) {
+                buffer = pool.pollLast();
+            }
+            if (buffer == null || buffer.capacity() != numBytes)
+                buffer = Mat5.getDefaultBufferAllocator().allocate(numBytes);
+            return buffer;
+        }
+
+        /**
+         * Buffers get zeroed when they are released, so the cost is paid by the writing thread
+         */
+        @Override
+        public void release(ByteBuffer buffer) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+            }
+            buffer.clear();
+            synchronized (pool) {
+                pool.addLast(buffer);
+            }
+        }
+
+        private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>();
+        private static final byte[] ZEROS = new byte[4096];
+
+    }
+
+    private static class Channel {
+
+        Channel(String name, MatlabType type) {
+            this.name = name;
+            this.type = checkNotNull(type);
+            this.tagType = Mat5Type.fromNumericalType(type);
+        }
+
+        final String name;
+        final MatlabType type;
+        final Mat5Type tagType;
+        final BufferPool buffers = new BufferPool();
+
+    }
+
+    private final File folder;
+    private final String prefix;
+    private final ExecutorService executorService;
+    private final List<Channel> channels = new ArrayList<Channel>();
+    private long maxSegmentBytes = 64 * 1024 * 1024;
+    private long maxSegmentNanos = 0;
+    private int maxPendingSegments = 2;
+    private int deflateLevel = Deflater.BEST_SPEED;
+
+    // Current segment
+    private UniversalNumberStore[] columns = null;
+    private int capacity = 0;
+    private int row = 0;
+    private long segmentStart = 0;
+
+    // Written segments
+    private MemoryBudget pendingSegments = null;
+    private final ArrayDeque<Future<File>> segments = new ArrayDeque<Future<File>>();
+    private final List<File> writtenFiles = new ArrayList<File>();
+    private int numSegments = 0;
+    private boolean closed = false;
+
+}
@@ -27,16 +27,21 @@ import us.hebi.matlab.mat.types.Opaque;
 import us.hebi.matlab.mat.types.Sparse;
 import us.hebi.matlab.mat.types.*;
 import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.MemoryBudget;
+import us.hebi.matlab.mat.util.NonOwningBufferAllocator;
 import us.hebi.matlab.mat.util.Tasks;
 import us.hebi.matlab.mat.util.Tasks.IoTask;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.Object;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -92,7 +97,7 @@ public class Mat5Reader {
             return Mat5ArrayFlags.getNzMax(arrayFlags);
         }
 
-        private EntryHeader(int[] arrayFlags, MatlabType type, int[] dimensions, String name) {
+        EntryHeader(int[] arrayFlags, MatlabType type, int[] dimensions, String name) {
             this.arrayFlags = arrayFlags;
             this.type = type;
             this.dimensions = dimensions;
@@ -136,6 +141,24 @@ public class Mat5Reader {
         return this;
     }
 
+    /**
+     * Restricts reading to the specified paths of root entries and struct fields, e.g.,
+     * "log.sensors.imu.accel". Each path starts with the name of a root entry followed by
+     * dot separated field names, and a '*' matches any name on its level. Fields that are
+     * not selected by any path get skipped without allocating their content and will not
+     * show up in the resulting struct. Cell arrays are transparent, i.e., structs inside a
+     * cell are filtered using the same level as the cell.
+     * <p>
+     * Root entries that don't match any path get filtered in addition to the entry filter.
+     *
+     * @param paths paths to be read
+     * @return this
+     */
+    public Mat5Reader setProjection(String... paths) {
+        this.rootProjection = Projection.fromPaths(paths);
+        return this;
+    }
+
     /**
      * Inflating compressed entries is by far the most expensive part of reading a MAT5 file.
      * This method enables the inflation to happen concurrently, i.e., in multiple threads,
@@ -144,6 +167,11 @@ public class Mat5Reader {
      * Note that this only works for sources that can read sub-sections (slices) of the data
      * such as buffers or memory mapped files. If the source does not support it, the source
      * will continue to be read using a single thread.
+     * <p>
+     * Entries that were written with independent blocks (see {@link Mat5Writer#enableIndependentBlockCompression(int)})
+     * and that are read via {@link #readMatLazily(Mat5Index)} or with an index (see {@link #setIndex(Mat5Index)})
+     * get split into blocks that are inflated concurrently, so even a single large entry can make use of
+     * multiple threads.
      *
      * @param executorService executorService
      * @return this
@@ -153,6 +181,91 @@ public class Mat5Reader {
         return this;
     }
 
+    /**
+     * Enables concurrent decompression for sources that can't read sub-sections of the data,
+     * e.g., input streams or streaming files. The compressed bytes of each root entry get copied
+     * into a temporary buffer (see {@link #setBufferAllocator(BufferAllocator)}) that can be inflated
+     * independently while the reading thread continues with the next entry.
+     * <p>
+     * The total size of all buffered compressed entries is limited to the specified number of bytes.
+     * The reading thread blocks when the limit is reached, and entries that are larger than the limit
+     * get inflated directly from the source. Sources that support slicing don't require any copies.
+     *
+     * @param executorService   executorService
+     * @param maxReadAheadBytes max number of compressed bytes held in temporary buffers
+     * @return this
+     */
+    public Mat5Reader enableConcurrentDecompression(ExecutorService executorService, long maxReadAheadBytes) {
+        this.readAheadBudget = new MemoryBudget(maxReadAheadBytes);
+        return enableConcurrentDecompression(executorService);
+    }
+
+    /**
+     * Lets {@link #readMat()} use an index that was created for the same file, e.g., by
+     * {@link Mat5Writer#enableIndex()}. Entries that were written with independent blocks
+     * (see {@link Mat5Writer#enableIndependentBlockCompression(int)}) then get split into blocks
+     * that are inflated concurrently, so even a single large entry can make use of multiple threads.
+     * This only has an effect if concurrent decompression is enabled and the source supports
+     * random access.
+     *
+     * @param index index of the root entries
+     * @return this
+     * @see #enableConcurrentDecompression(ExecutorService)
+     */
+    public Mat5Reader setIndex(Mat5Index index) {
+        this.index = checkNotNull(index, "Index can't be empty");
+        return this;
+    }
+
+    /**
+     * Limits the number of decompressed bytes of root entries that are being inflated concurrently.
+     * Without a limit, all compressed root entries get handed to the executor immediately, so the
+     * memory used by partially inflated entries is only bounded by the size of the file. With a limit,
+     * the reading thread stops dispatching entries until earlier entries have finished inflating.
+     * <p>
+     * The size of an entry is estimated from its compressed size before dispatching, and gets corrected
+     * to the actual size once the header of the decompressed data has been read. Entries that are larger
+     * than the limit get inflated on their own. This only has an effect if concurrent decompression
+     * is enabled.
+     *
+     * @param maxInflightBytes max number of decompressed bytes of entries being inflated
+     * @return this
+     * @see #enableConcurrentDecompression(ExecutorService)
+     */
+    public Mat5Reader setMaxInflightBytes(long maxInflightBytes) {
+        this.inflightBudget = new MemoryBudget(maxInflightBytes);
+        return this;
+    }
+
+    /**
+     * Lets numeric arrays share memory with the source rather than copying their data into
+     * buffers from the buffer allocator. This only applies to uncompressed data in sources
+     * that can provide views on their underlying memory, e.g., buffers or memory mapped files,
+     * and it significantly reduces the time and memory required for opening large uncompressed
+     * (e.g. '-v6') files. All other data continues to be copied.
+     * <p>
+     * Shared arrays are read-only, i.e., modifying values throws a {@link java.nio.ReadOnlyBufferException},
+     * and the source needs to remain open for as long as the arrays are in use.
+     *
+     * @return this
+     */
+    public Mat5Reader enableZeroCopy() {
+        this.zeroCopy = true;
+        return this;
+    }
+
+    /**
+     * Same as {@link #enableZeroCopy()} for sources with writable views, e.g.,
+     * {@link Sources#openFileForUpdate(java.io.File)}, so that modifications of shared arrays
+     * write through to the source. Numeric data that can't be shared, e.g., because it is
+     * compressed, is copied into read-only buffers so that modifications don't get lost silently.
+     */
+    Mat5Reader enableWriteThrough() {
+        this.zeroCopy = true;
+        this.readOnlyCopies = true;
+        return this;
+    }
+
     /**
      * Sets the buffer allocator that gets used for creating any buffer-backed array. Buffers
      * will be released when the array or containing mat file gets closed. This is not a
@@ -167,6 +280,29 @@ public class Mat5Reader {
         return this;
     }
 
+    /**
+     * Allocates all buffers of a file read by {@link #readMat()} from an {@link ArenaBufferAllocator}
+     * that gets freed in one step when the returned file gets closed. This avoids allocating and
+     * freeing a direct buffer for every array, but none of the arrays may be used after the file
+     * has been closed. Closing individual arrays does not free any memory.
+     *
+     * @return this
+     */
+    public Mat5Reader enableArenaAllocation() {
+        return enableArenaAllocation(4 * 1024 * 1024);
+    }
+
+    /**
+     * @param slabSize size of the slabs that buffers get carved from
+     * @return this
+     * @see #enableArenaAllocation()
+     */
+    public Mat5Reader enableArenaAllocation(int slabSize) {
+        checkArgument(slabSize >= 64, "slab size is too small");
+        this.arenaSlabSize = slabSize;
+        return this;
+    }
+
     public Mat5Reader setReducedHeader(boolean reducedHeader) {
         this.reducedHeader = reducedHeader;
         return this;
@@ -197,12 +333,22 @@ public class Mat5Reader {
     }
 
     public final Mat5File readMat() throws IOException {
+        // Arrays get allocated from an arena that lives as long as the file
+        final BufferAllocator allocator = bufferAllocator;
+        final ArenaBufferAllocator arena = arenaSlabSize > 0 ? new ArenaBufferAllocator(arenaSlabSize) : null;
+        if (arena != null)
+            bufferAllocator = arena;
+
         try {
 
             // Read header and determine byte order
             long start = source.getPosition();
             Mat5File matFile = readMatHeader();
             this.subsysPosition = start + matFile.getSubsysOffset();
+            this.indexStart = start;
+            if (index != null && !index.getDescription().equals(matFile.getDescription()))
+                throw readError("Index does not match the file header. Expected: '%s', Found: '%s'",
+                        index.getDescription(), matFile.getDescription());
 
             // Generate content structure
             for (Future<MatFile.Entry> task : readMatContent()) {
@@ -216,12 +362,315 @@ public class Mat5Reader {
             if (matFile.getSubsystem() != null && processSubsystem)
                 ((Mat5Subsystem) matFile.getSubsystem().getValue()).processReferences(mcos);
 
+            // Failed reads leave the arena to the garbage collector because
+            // concurrent tasks may still be writing into its buffers
+            if (arena != null)
+                matFile.closeWithFile(arena);
             return matFile;
 
         } catch (Exception e) {
             throw new IOException(e);
+        } finally {
+            bufferAllocator = allocator;
+        }
+
+    }
+
+    /**
+     * Reads only the root-level structure of a MAT file, i.e., the header of each root entry,
+     * and defers reading (and inflating) the content until an array gets accessed for the first
+     * time. This can be significantly faster than reading everything upfront if only a few
+     * variables of a large file are needed.
+     * <p>
+     * The source needs to support random access (e.g. buffers or memory mapped files) and needs
+     * to remain open until the returned file gets closed. Entry filters get applied to the
+     * root entries during the initial scan, and the (optional) subsystem gets read eagerly.
+     *
+     * @return mat file that reads entries on first access
+     * @throws IOException if the root-level structure can't be read
+     */
+    public final Mat5LazyFile readMatLazily() throws IOException {
+        checkState(isRandomAccess(source), "Lazy reading requires a source that supports random access");
+
+        // Read header and determine byte order
+        long start = source.getPosition();
+        Mat5File header = readMatHeader();
+        this.subsysPosition = start + header.getSubsysOffset();
+        Mat5LazyFile matFile = new Mat5LazyFile(header, this);
+
+        // Scan root entries without reading the content
+        Mat5Tag tag = Mat5Tag.readTagOrNull(source);
+        while (tag != null) {
+            checkArgument(tag.getNumBytes() != 0, "Root element contains no data");
+            Mat5Index.Entry entry = readIndexEntry(start, tag, isAtSubsystem());
+            source.skip(tag.getNumBytes() + tag.getPadding());
+            addLazyEntry(matFile, start, entry);
+            tag = Mat5Tag.readTagOrNull(source);
+        }
+        matFile.setEndOffset(source.getPosition() - start);
+        return matFile;
+    }
+
+    /**
+     * Reads only the headers of the root entries, i.e., the names, types, and dimensions of all
+     * variables similar to MATLAB's 'whos -file'. Compressed entries only get inflated as far as
+     * needed for parsing the header, so the cost is largely independent of the size of the data.
+     * If concurrent decompression is enabled and the source supports random access, the entries
+     * get probed concurrently.
+     * <p>
+     * Entry filters and projections get applied to the root entries. The (optional) subsystem
+     * is part of the result, but does not get read.
+     *
+     * @return index with the header as well as the stored and uncompressed sizes of each root entry
+     * @throws IOException if the root-level structure can't be read
+     */
+    public final Mat5Index readIndex() throws IOException {
+        // Read header and determine byte order
+        long start = source.getPosition();
+        Mat5File header = readMatHeader();
+        this.subsysPosition = start + header.getSubsysOffset();
+
+        // Probe all root entries
+        List<Future<Mat5Index.Entry>> probes = new ArrayList<Future<Mat5Index.Entry>>();
+        Mat5Tag tag = Mat5Tag.readTagOrNull(source);
+        while (tag != null) {
+            probes.add(probeEntry(start, tag, isAtSubsystem()));
+            tag = Mat5Tag.readTagOrNull(source);
+        }
+
+        // Collect results in file order
+        List<Mat5Index.Entry> entries = new ArrayList<Mat5Index.Entry>(probes.size());
+        try {
+            for (Future<Mat5Index.Entry> probe : probes) {
+                Mat5Index.Entry entry = probe.get();
+                if (entry.isSubsystem() || isAcceptedAtRoot(entry.getHeader()))
+                    entries.add(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while probing entries");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        return new Mat5Index(header.getDescription(), source.getPosition() - start, entries);
+    }
+
+    /**
+     * Same as {@link #readMatLazily()}, but uses a previously created index rather than scanning
+     * the file, so no data other than the file header gets touched before an entry gets accessed.
+     * The index needs to have been created for the same file, e.g., by {@link Mat5Writer#enableIndex()}.
+     *
+     * @param index index of the root entries
+     * @return mat file that reads entries on first access
+     * @throws IOException if the header can't be read or does not match the index
+     */
+    public final Mat5LazyFile readMatLazily(Mat5Index index) throws IOException {
+        checkNotNull(index, "Index can't be empty");
+        checkState(isRandomAccess(source), "Lazy reading requires a source that supports random access");
+
+        // Make sure that the index was created for this file. Entries get checked on first access.
+        long start = source.getPosition();
+        Mat5File header = readMatHeader();
+        if (!header.getDescription().equals(index.getDescription()))
+            throw readError("Index does not match the file header. Expected: '%s', Found: '%s'",
+                    index.getDescription(), header.getDescription());
+
+        // Files that were modified, e.g., by appending entries, no longer end where the index says
+        if (!isEndOfData(start + index.getEndOffset()))
+            throw readError("Index does not match the file size. Expected the last entry to end at %d",
+                    index.getEndOffset());
+
+        Mat5LazyFile matFile = new Mat5LazyFile(header, this);
+        matFile.setEndOffset(index.getEndOffset());
+        for (Mat5Index.Entry entry : index.getEntries()) {
+            addLazyEntry(matFile, start, entry);
+        }
+        return matFile;
+    }
+
+    /**
+     * Checks whether the data of a random access source ends exactly at the given position
+     */
+    private boolean isEndOfData(long position) throws IOException {
+        try {
+            slice(source, position, 0).close();
+        } catch (EOFException eof) {
+            return false; // ends earlier
+        }
+        try {
+            slice(source, position, 1).close();
+            return false; // continues
+        } catch (EOFException eof) {
+            return true;
+        }
+    }
+
+    private void addLazyEntry(Mat5LazyFile matFile, long start, Mat5Index.Entry entry) throws IOException {
+        EntryHeader header = entry.getHeader();
+        Mat5LazyFile.LazyEntry lazyEntry = new Mat5LazyFile.LazyEntry(entry, start + entry.getOffset() + Mat5.MATRIX_TAG_SIZE);
+        if (entry.isSubsystem()) {
+            // The subsystem is required for resolving references
+            matFile.addToIndex(entry);
+            matFile.addEntry(readLazyEntry(lazyEntry, true, null));
+        } else if (header.getType() == Opaque || isAcceptedAtRoot(header)) {
+            matFile.addToIndex(entry);
+            matFile.addLazyEntry(lazyEntry);
         }
+    }
+
+    /**
+     * Reads the header of the root entry at the current position without moving the source
+     */
+    private Mat5Index.Entry readIndexEntry(long start, Mat5Tag tag, boolean atSubsys) throws IOException {
+        final long position = source.getPosition();
+        Source body = slice(source, position, tag.getNumBytes());
+        try {
+            return probeEntry(body, position - Mat5.MATRIX_TAG_SIZE - start, tag, atSubsys);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Parses the header of a root entry from the beginning of its content. Compressed entries
+     * only get inflated as far as needed, and the remainder of the body does not get read.
+     */
+    private Mat5Index.Entry probeEntry(Source body, long offset, Mat5Tag tag, boolean atSubsys) throws IOException {
+        final boolean compressed;
+        if (tag.getType() == Matrix) {
+            compressed = false;
+        } else if (tag.getType() == Compressed) {
+            compressed = true;
+        } else {
+            throw readError("Expected 'Matrix' or 'Compressed' tag. Found: %s", tag.getType());
+        }
+
+        if (!compressed) {
+            EntryHeader header = createChildReader(body).readEntryHeader();
+            long uncompressedSize = Mat5.MATRIX_TAG_SIZE + Casts.uint32(tag.getNumBytes());
+            return new Mat5Index.Entry(header, offset, tag.getNumBytes(), uncompressedSize, false, atSubsys);
+        }
+
+        // Only inflate the first few bytes
+        Source inflated = body.readInflated(tag.getNumBytes(), Math.min(getInflateBufferSize(tag.getNumBytes()), 512));
+        try {
+            Mat5Reader reader = createChildReader(inflated);
+            Mat5Tag matrixTag = reader.readTagWithExpectedType(Matrix);
+            long uncompressedSize = Mat5.MATRIX_TAG_SIZE + Casts.uint32(matrixTag.getNumBytes());
+            final EntryHeader header;
+            if (matrixTag.getNumBytes() == 0) {
+                int[] arrayFlags = Mat5ArrayFlags.forArray(false, Mat5.EMPTY_MATRIX);
+                header = new EntryHeader(arrayFlags, Mat5ArrayFlags.getType(arrayFlags), new int[]{0, 0}, "");
+            } else {
+                header = reader.readEntryHeader();
+            }
+            return new Mat5Index.Entry(header, offset, tag.getNumBytes(), uncompressedSize, true, atSubsys);
+        } finally {
+            inflated.close();
+        }
+    }
+
+    /**
+     * Probes the root entry at the current position and moves the source to the next entry
+     */
+    private Future<Mat5Index.Entry> probeEntry(long start, final Mat5Tag tag, final boolean atSubsys) throws IOException {
+        checkArgument(tag.getNumBytes() != 0, "Root element contains no data");
+        final long position = source.getPosition();
+        final long offset = position - Mat5.MATRIX_TAG_SIZE - start;
+        final long expectedEnd = position + tag.getNumBytes() + tag.getPadding();
+
+        // Independent views can be probed in the background
+        if (executorService != null && isRandomAccess(source)) {
+            final Source body = slice(source, position, tag.getNumBytes());
+            source.skip(expectedEnd - position);
+            return executorService.submit(new IoTask<Mat5Index.Entry>() {
+                @Override
+                public Mat5Index.Entry call() throws IOException {
+                    try {
+                        return probeEntry(body, offset, tag, atSubsys);
+                    } finally {
+                        body.close();
+                    }
+                }
+            });
+        }
+
+        try {
+            return Tasks.wrapAsFuture(probeEntry(source, offset, tag, atSubsys));
+        } finally {
+            // Skip the part of the entry that did not need to be read
+            long remaining = expectedEnd - source.getPosition();
+            if (remaining > 0)
+                source.skip(remaining);
+        }
+    }
+
+    /**
+     * Reads the content of a root entry that has been found by {@link #readMatLazily()}. References
+     * to handle classes get resolved using the subsystem if one is available.
+     */
+    MatFile.Entry readLazyEntry(Mat5LazyFile.LazyEntry entry, boolean atSubsys, Mat5Subsystem subsystem) throws IOException {
+        McosRegistry registry = new McosRegistry();
+        final MatFile.Entry result;
+        final int numBytes = entry.index.numBytes;
+        Source body = slice(source, entry.position - Mat5.MATRIX_TAG_SIZE, Mat5.MATRIX_TAG_SIZE + Casts.uint32(numBytes));
+        try {
+            prefetch(body, Mat5.MATRIX_TAG_SIZE + Casts.uint32(numBytes));
+
+            // Make sure that an external index matches the data
+            Mat5Tag tag = Mat5Tag.readTag(body);
+            Mat5Type expectedType = entry.index.compressed ? Compressed : Matrix;
+            if (tag.getType() != expectedType || tag.getNumBytes() != numBytes)
+                throw readError("Root entry '%s' does not match the index", entry.header.getName());
+
+            if (!entry.index.compressed) {
+                Mat5Reader reader = createChildReader(body).setMcosRegistry(registry);
+                result = reader.atRoot(atSubsys).readEntryWithoutTag(numBytes);
+            } else if (canInflateBlocks(entry.index)) {
+                result = readBlocks(entry.index, entry.position, atSubsys, registry);
+            } else {
+                Source inflated = body.readInflated(numBytes, getInflateBufferSize(numBytes));
+                try {
+                    Mat5Reader reader = createChildReader(inflated).setMcosRegistry(registry);
+                    result = reader.atRoot(atSubsys).readEntry();
+                } finally {
+                    inflated.close();
+                }
+            }
+
+        } finally {
+            body.close();
+        }
+
+        if (subsystem != null && processSubsystem && !registry.getReferences().isEmpty())
+            subsystem.processReferences(registry);
+        return result;
+    }
 
+    private boolean canInflateBlocks(Mat5Index.Entry entry) {
+        return executorService != null
+                && entry.getNumBlocks() > 1
+                && entry.uncompressedSize <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Inflates the independent blocks of a compressed entry concurrently into a temporary
+     * buffer from the buffer allocator and parses the result. The inflated data does not
+     * outlive this call, so arrays get copied even if zero-copy is enabled.
+     */
+    private MatFile.Entry readBlocks(Mat5Index.Entry index, long position, boolean atSubsys, McosRegistry registry) throws IOException {
+        int numBytes = (int) index.uncompressedSize;
+        ByteBuffer buffer = bufferAllocator.allocate(numBytes);
+        try {
+            buffer.limit(numBytes);
+            BlockInflater.inflate((AbstractSource) source, position, index, buffer, executorService);
+            buffer.flip();
+            Mat5Reader reader = createChildReader(Sources.wrap(buffer).order(source.order())).setMcosRegistry(registry);
+            reader.zeroCopy = false;
+            return reader.atRoot(atSubsys).readEntry();
+        } finally {
+            bufferAllocator.release(buffer);
+        }
     }
 
     private Mat5File readMatHeader() throws IOException {
@@ -252,16 +701,10 @@ public class Mat5Reader {
     private Future<MatFile.Entry> readEntry(Mat5Tag tag) throws IOException {
         checkArgument(tag.getNumBytes() != 0, "Root element contains no data");
         long expectedEnd = source.getPosition() + tag.getNumBytes() + tag.getPadding();
+        final boolean atSubsys = isAtSubsystem();
 
-        final boolean atSubsys;
-        if (!reducedHeader) {
-            // Normal file: offset is inside header
-            atSubsys = (subsysPosition == source.getPosition() - Mat5.MATRIX_TAG_SIZE);
-        } else {
-            // Reduced: subsystem is always the second entry
-            numEntries++;
-            atSubsys = (numEntries == 2);
-        }
+        // Pages only get touched once the entry header has passed the filter
+        final Source region = isRandomAccess(source) ? slice(source, source.getPosition(), Casts.uint32(tag.getNumBytes())) : null;
 
         try {
 
@@ -269,7 +712,11 @@ public class Mat5Reader {
             // Since we don't have an independent view on the data, we can't defer parsing
             // and do it immediately in the main thread.
             if (tag.getType() == Matrix) {
-                return Tasks.wrapAsFuture(atRoot(atSubsys).readEntryWithoutTag(tag));
+                try {
+                    return Tasks.wrapAsFuture(atRoot(atSubsys, region).readEntryWithoutTag(tag.getNumBytes()));
+                } finally {
+                    prefetchRegion = null;
+                }
             }
 
             // Root element is stored compressed using the 'deflate' algorithm. Depending on
@@ -278,21 +725,38 @@ public class Mat5Reader {
             // gains, especially on large files. Note that only root elements can be compressed.
             if (tag.getType() == Compressed) {
 
+                // Inflate independent blocks concurrently if the index knows about them
+                Mat5Index.Entry blocks = findBlocks(tag, atSubsys);
+                if (blocks != null) {
+                    return Tasks.wrapAsFuture(readBlocks(blocks, source.getPosition(), atSubsys, mcos));
+                }
+
+                // Copy the compressed data into a buffer if the source can't provide independent views
+                int bufferSize = getInflateBufferSize(tag.getNumBytes());
+                if (isReadAheadEnabled(tag.getNumBytes())) {
+                    return readAheadCompressed(tag.getNumBytes(), bufferSize, atSubsys);
+                }
+
+                // Wait for earlier entries if too many bytes are being inflated
+                boolean runAsync = !source.isMutatedByChildren() && executorService != null;
+                final InflightReservation reservation = runAsync ? reserveInflight(tag.getNumBytes()) : null;
+
                 // Create an independent Source for the decompressed data
-                int bufferSize = tag.getNumBytes() * 2;
-                if (bufferSize > maxInflateBufferSize || bufferSize < 0 /* overflow >1 GB */) {
-                    bufferSize = maxInflateBufferSize;
+                final Source inflated;
+                try {
+                    inflated = source.readInflated(tag.getNumBytes(), bufferSize);
+                } catch (IOException ioe) {
+                    if (reservation != null)
+                        reservation.close();
+                    throw ioe;
                 }
-                final Source inflated = source.readInflated(tag.getNumBytes(), bufferSize);
 
                 // Read array in a task
                 IoTask<MatFile.Entry> task = new IoTask<MatFile.Entry>() {
                     @Override
                     public MatFile.Entry call() throws IOException {
                         try {
-                            return createChildReader(inflated)
-                                    .atRoot(atSubsys)
-                                    .readEntry();
+                            return readInflatedEntry(inflated, atSubsys, region, reservation);
                         } finally {
                             inflated.close();
                         }
@@ -300,8 +764,7 @@ public class Mat5Reader {
                 };
 
                 // If possible execute it asynchronously
-                boolean runAsync = !source.isMutatedByChildren() && executorService != null;
-                return runAsync ? executorService.submit(task) : Tasks.wrapAsFuture(task.call());
+                return runAsync ? submit(task, reservation) : Tasks.wrapAsFuture(task.call());
 
             }
 
@@ -317,6 +780,189 @@ public class Mat5Reader {
         }
     }
 
+    /**
+     * Looks up the root entry at the current position in the index
+     *
+     * @return entry with independent blocks that can be inflated concurrently, or null if not available
+     */
+    private Mat5Index.Entry findBlocks(Mat5Tag tag, boolean atSubsys) throws IOException {
+        if (index == null || !isRandomAccess(source))
+            return null;
+        long offset = source.getPosition() - Mat5.MATRIX_TAG_SIZE - indexStart;
+        for (Mat5Index.Entry entry : index.getEntries()) {
+            if (entry.getOffset() != offset)
+                continue;
+            if (!entry.compressed || entry.numBytes != tag.getNumBytes())
+                throw readError("Root entry '%s' does not match the index", entry.getHeader().getName());
+            boolean accepted = atSubsys || entry.getHeader().getType() == Opaque || isAcceptedAtRoot(entry.getHeader());
+            return accepted && canInflateBlocks(entry) ? entry : null;
+        }
+        return null;
+    }
+
+    private boolean isReadAheadEnabled(int numCompressedBytes) {
+        return executorService != null
+                && readAheadBudget != null
+                && source.isMutatedByChildren()
+                && numCompressedBytes > 0 /* overflow >2 GB */
+                && numCompressedBytes <= readAheadBudget.getMaxBytes();
+    }
+
+    private Future<MatFile.Entry> readAheadCompressed(final int numBytes, final int bufferSize, final boolean atSubsys) throws IOException {
+        // Wait for other entries to finish if we exceed the limit
+        final MemoryBudget budget = readAheadBudget;
+        final BufferAllocator allocator = bufferAllocator;
+        budget.acquire(numBytes);
+
+        ByteBuffer buffer = null;
+        InflightReservation reservation = null;
+        boolean submitted = false;
+        try {
+
+            // Wait for earlier entries if too many bytes are being inflated
+            reservation = reserveInflight(numBytes);
+
+            // Copy compressed data
+            buffer = allocator.allocate(numBytes);
+            source.readByteBuffer(buffer);
+            buffer.flip();
+
+            // Inflate in the background and release the buffer afterwards
+            final ByteBuffer compressed = buffer;
+            final InflightReservation inflight = reservation;
+            Future<MatFile.Entry> future = submit(new IoTask<MatFile.Entry>() {
+                @Override
+                public MatFile.Entry call() throws IOException {
+                    try {
+                        Source inflated = Sources.wrap(compressed)
+                                .order(source.order())
+                                .readInflated(numBytes, bufferSize);
+                        try {
+                            return readInflatedEntry(inflated, atSubsys, null, inflight);
+                        } finally {
+                            inflated.close();
+                        }
+                    } finally {
+                        allocator.release(compressed);
+                        budget.release(numBytes);
+                    }
+                }
+            }, reservation);
+            submitted = true;
+            return future;
+
+        } finally {
+            if (!submitted) {
+                if (buffer != null)
+                    allocator.release(buffer);
+                if (reservation != null)
+                    reservation.close();
+                budget.release(numBytes);
+            }
+        }
+    }
+
+    /**
+     * Reads a root entry from inflated data. Lets the reservation know about
+     * the actual size as soon as the header has been inflated.
+     */
+    private MatFile.Entry readInflatedEntry(Source inflated, boolean atSubsys, Source region, InflightReservation reservation) throws IOException {
+        return createChildReader(inflated).atRoot(atSubsys, region).readEntry(reservation);
+    }
+
+    /**
+     * Blocks until the estimated size of a compressed entry fits into the in-flight budget
+     *
+     * @return reservation that needs to be closed once the entry has been inflated, or null if there is no limit
+     */
+    private InflightReservation reserveInflight(int numCompressedBytes) throws IOException {
+        if (inflightBudget == null)
+            return null;
+        long estimate = Casts.uint32(numCompressedBytes) * INFLATE_RATIO_ESTIMATE;
+        InflightReservation reservation = new InflightReservation(inflightBudget, estimate);
+        inflightBudget.acquire(reservation.reservedBytes);
+        return reservation;
+    }
+
+    private Future<MatFile.Entry> submit(IoTask<MatFile.Entry> task, InflightReservation reservation) {
+        if (reservation == null)
+            return executorService.submit(task);
+        try {
+            return executorService.submit(reservation.wrap(task));
+        } catch (RuntimeException re) {
+            reservation.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Bytes that a single entry holds in the in-flight budget. Entries that are
+     * larger than the budget reserve the entire budget so that they run alone.
+     * Corrections never block because tasks must not wait for each other.
+     */
+    private static class InflightReservation {
+
+        InflightReservation(MemoryBudget budget, long numBytes) {
+            this.budget = budget;
+            this.reservedBytes = Math.min(numBytes, budget.getMaxBytes());
+        }
+
+        synchronized void update(long numBytes) {
+            long actualBytes = Math.min(numBytes, budget.getMaxBytes());
+            if (actualBytes > reservedBytes) {
+                budget.forceAcquire(actualBytes - reservedBytes);
+            } else {
+                budget.release(reservedBytes - actualBytes);
+            }
+            reservedBytes = actualBytes;
+        }
+
+        synchronized void close() {
+            budget.release(reservedBytes);
+            reservedBytes = 0;
+        }
+
+        IoTask<MatFile.Entry> wrap(final IoTask<MatFile.Entry> task) {
+            return new IoTask<MatFile.Entry>() {
+                @Override
+                public MatFile.Entry call() throws IOException {
+                    try {
+                        return task.call();
+                    } finally {
+                        close();
+                    }
+                }
+            };
+        }
+
+        final MemoryBudget budget;
+        long reservedBytes;
+
+    }
+
+    /**
+     * Checks whether the root entry whose tag has just been read is the
+     * (optional) subsystem. Needs to be called exactly once per root entry.
+     */
+    private boolean isAtSubsystem() {
+        if (!reducedHeader) {
+            // Normal file: offset is inside header
+            return subsysPosition == source.getPosition() - Mat5.MATRIX_TAG_SIZE;
+        } else {
+            // Reduced: subsystem is always the second entry
+            numEntries++;
+            return numEntries == 2;
+        }
+    }
+
+    private int getInflateBufferSize(int numCompressedBytes) {
+        int bufferSize = numCompressedBytes * 2;
+        if (bufferSize > maxInflateBufferSize || bufferSize < 0 /* overflow >1 GB */) {
+            bufferSize = maxInflateBufferSize;
+        }
+        return bufferSize;
+    }
+
     /**
      * Indicates that the parser is at the root level and that
      * the next matrix is a root element. This may enable
@@ -325,35 +971,111 @@ public class Mat5Reader {
      * @return this
      */
     private Mat5Reader atRoot(boolean atSubsys) {
+        return atRoot(atSubsys, null);
+    }
+
+    /**
+     * @param region source for the root entry that gets prefetched once the entry has been accepted, or null
+     */
+    private Mat5Reader atRoot(boolean atSubsys, Source region) {
         nextIsSubsys = atSubsys;
         mayFilterNext = true;
+        prefetchRegion = region;
         return this;
     }
 
+    private static final long MAX_ENTRY_BYTES = 0xFFFFFFFFL; // uint32 tag size
+
+    private static void prefetch(Source region) throws IOException {
+        if (region == null)
+            return;
+        try {
+            prefetch(region, MAX_ENTRY_BYTES);
+        } finally {
+            region.close();
+        }
+    }
+
+    // Random access and zero-copy views are only available on sources that extend AbstractSource.
+    // Other implementations get read sequentially, which is what older versions did for all sources.
+    private static boolean isRandomAccess(Source source) {
+        return source instanceof AbstractSource && ((AbstractSource) source).isRandomAccess();
+    }
+
+    private static Source slice(Source source, long position, long numBytes) throws IOException {
+        checkState(isRandomAccess(source), "Source does not support random access");
+        return ((AbstractSource) source).slice(position, numBytes);
+    }
+
+    private static ByteBuffer readBufferView(Source source, int numBytes) throws IOException {
+        return source instanceof AbstractSource ? ((AbstractSource) source).readBufferView(numBytes) : null;
+    }
+
+    private static void prefetch(Source source, long numBytes) {
+        if (source instanceof AbstractSource)
+            ((AbstractSource) source).prefetch(numBytes);
+    }
+
     private boolean isAccepted(EntryHeader header) {
         try {
-            if (filter == null || !mayFilterNext || nextIsSubsys)
+            if (!mayFilterNext || nextIsSubsys)
                 return true;
-            return filter.isAccepted(header);
+            return isAcceptedAtRoot(header);
         } finally {
             mayFilterNext = false;
         }
     }
 
+    private boolean isAcceptedAtRoot(EntryHeader header) {
+        if (rootProjection != null && rootProjection.select(header.getName()) == null)
+            return false;
+        return filter == null || filter.isAccepted(header);
+    }
+
     protected Array readNestedArray() throws IOException {
         return readEntry().getValue();
     }
 
+    /**
+     * Reads a nested array that is restricted to the given projection
+     */
+    private Array readNestedArray(Projection child) throws IOException {
+        final Projection parent = projection;
+        try {
+            projection = child.isAll() ? null : child;
+            return readNestedArray();
+        } finally {
+            projection = parent;
+        }
+    }
+
+    /**
+     * Skips a nested array without allocating any of its content
+     */
+    private void skipNestedArray() throws IOException {
+        Mat5Tag tag = readTagWithExpectedType(Matrix);
+        source.skip(tag.getNumBytes() + tag.getPadding());
+    }
+
     private MatFile.Entry readEntry() throws IOException {
+        return readEntry((InflightReservation) null);
+    }
+
+    /**
+     * @param reservation reservation that gets updated with the actual size once the tag has been read, or null
+     */
+    private MatFile.Entry readEntry(InflightReservation reservation) throws IOException {
         Mat5Tag tag = readTagWithExpectedType(Matrix);
+        if (reservation != null)
+            reservation.update(Casts.uint32(tag.getNumBytes()));
         // Sometimes there are completely empty Matrix tags. In that
         // case, return empty matrix rather than null.
         if (tag.getNumBytes() == 0)
             return new MatFile.Entry("", false, Mat5.EMPTY_MATRIX);
-        return readEntryWithoutTag(tag);
+        return readEntryWithoutTag(tag.getNumBytes());
     }
 
-    private MatFile.Entry readEntryWithoutTag(Mat5Tag tag) throws IOException {
+    private MatFile.Entry readEntryWithoutTag(int tagNumBytes) throws IOException {
         // MATLAB defines a limit of <2GB per entry, but Octave apparently treats
         // the size as a uint32 and allows <4GB entries. Interestingly, MATLAB 2021a
         // is able to load these entries, but is unable to re-save them.
@@ -365,7 +1087,7 @@ public class Mat5Reader {
         // later stage if we encounter a numerical matrix that is out of the Java
         // limits. Note that we do not have to worry about computing padding of a negative
         // number because entries are already aligned and always have zero padding.
-        final long expectedBytes = Casts.uint32(tag.getNumBytes());
+        final long expectedBytes = Casts.uint32(tagNumBytes);
         if (expectedBytes > Integer.MAX_VALUE) {
             String warning = String.format("[MFL] encountered illegal entry larger than 2GB: %.1fGB.",
                     expectedBytes / 1024d / 1024d / 1024d);
@@ -383,10 +1105,15 @@ public class Mat5Reader {
         if (expectedBytes == numBytes || value == null)
             return value;
 
-        throw readError("Specified matrix tag does not match content size. Tag: %d, Content: %d", tag.getNumBytes(), numBytes);
+        throw readError("Specified matrix tag does not match content size. Tag: %d, Content: %d", tagNumBytes, numBytes);
     }
 
-    private MatFile.Entry readEntryWithoutTag() throws IOException {
+    /**
+     * Reads the common part of an array, i.e., the array flags, dimensions, and name. Opaque
+     * types have a different format that does not contain dimensions, so they get reported
+     * as scalars.
+     */
+    EntryHeader readEntryHeader() throws IOException {
         // Subfield 1: meta data
         int[] arrayFlags = readTagWithExpectedType(UInt32).readAsInts();
         if (arrayFlags.length != 2)
@@ -395,8 +1122,8 @@ public class Mat5Reader {
 
         // Opaque types have a different format
         if (type == Opaque) {
-            mayFilterNext = false;
-            return readOpaque(arrayFlags);
+            String name = readAsAscii(readTagWithExpectedType(Int8));
+            return new EntryHeader(arrayFlags, type, new int[]{1, 1}, name);
         }
 
         // Subfield 2: Dimensions
@@ -407,11 +1134,32 @@ public class Mat5Reader {
 
         // Subfield 3: Name
         String name = readAsAscii(readTagWithExpectedType(Int8));
-        EntryHeader header = new EntryHeader(arrayFlags, type, dimensions, name);
+        return new EntryHeader(arrayFlags, type, dimensions, name);
+    }
+
+    private MatFile.Entry readEntryWithoutTag() throws IOException {
+        final Source region = prefetchRegion;
+        prefetchRegion = null;
+        EntryHeader header = readEntryHeader();
+        final String name = header.getName();
+
+        // Root entries start with the projection of the matching path
+        if (mayFilterNext) {
+            Projection selected = rootProjection == null ? null : rootProjection.select(name);
+            projection = selected == null || selected.isAll() ? null : selected;
+        }
+
+        // Opaque types have a different format
+        if (header.getType() == Opaque) {
+            mayFilterNext = false;
+            prefetch(region);
+            return readOpaque(header);
+        }
 
         // Check if we should continue to read the content
         if (!isAccepted(header))
             return null;
+        prefetch(region);
 
         // Subsystem, e.g. class object information
         if (nextIsSubsys) {
@@ -466,7 +1214,7 @@ public class Mat5Reader {
                 throw new AssertionError("Should not get here");
 
             default:
-                throw readError("Found unsupported type: %s", type);
+                throw readError("Found unsupported type: %s", header.getType());
         }
 
         return new MatFile.Entry(name, header.isGlobal(), array);
@@ -579,20 +1327,50 @@ public class Mat5Reader {
         }
 
         // Subfield 6/7: Fields ([f f f f ...] * cols * rows)
-        final Array[][] values = readValues(header, numFields, names);
+        Array[][] values = readValues(header, numFields, names);
+
+        // Remove fields that were skipped by the projection
+        String[] fieldNames = names;
+        if (projection != null) {
+            int numSelected = 0;
+            for (int field = 0; field < numFields; field++) {
+                if (projection.select(names[field]) != null) {
+                    names[numSelected] = names[field];
+                    values[numSelected++] = values[field];
+                }
+            }
+            fieldNames = Arrays.copyOf(names, numSelected);
+            values = Arrays.copyOf(values, numSelected);
+        }
 
         if (objectClassName == null)
-            return createStruct(header.getDimensions(), names, values);
-        return createObject(header.getDimensions(), objectClassName, names, values);
+            return createStruct(header.getDimensions(), fieldNames, values);
+        return createObject(header.getDimensions(), objectClassName, fieldNames, values);
     }
 
     protected Array[][] readValues(EntryHeader header, int numFields, String[] names) throws IOException {
         // Subfield 6/7: Fields ([f f f f ...] * cols * rows)
         int numElements = header.getNumElements();
         final Array[][] values = new Array[numFields][numElements];
+
+        // Look up which fields are selected by the projection
+        Projection[] selected = null;
+        if (projection != null) {
+            selected = new Projection[numFields];
+            for (int field = 0; field < numFields; field++) {
+                selected[field] = projection.select(names[field]);
+            }
+        }
+
         for (int i = 0; i < numElements; i++) {
             for (int field = 0; field < numFields; field++) {
-                values[field][i] = readNestedArray();
+                if (selected == null) {
+                    values[field][i] = readNestedArray();
+                } else if (selected[field] != null) {
+                    values[field][i] = readNestedArray(selected[field]);
+                } else {
+                    skipNestedArray();
+                }
             }
         }
         return values;
@@ -611,11 +1389,11 @@ public class Mat5Reader {
      * Note that this is not in the official documentation. The implementation is based
      * on MatFileRW's MatFileReader and personal tests.
      */
-    private MatFile.Entry readOpaque(int[] arrayFlags) throws IOException {
-        boolean isGlobal = Mat5ArrayFlags.isGlobal(arrayFlags);
+    private MatFile.Entry readOpaque(EntryHeader header) throws IOException {
+        boolean isGlobal = header.isGlobal();
 
-        // Subfield 2: Ascii variable name
-        String name = readAsAscii(readTagWithExpectedType(Int8));
+        // Subfield 2: Ascii variable name (already part of the header)
+        String name = header.getName();
 
         // Subfield 3: Used to store the object type identifier, e.g., "MCOS" or "handle"
         String objectType = readAsAscii(readTagWithExpectedType(Int8));
@@ -635,9 +1413,28 @@ public class Mat5Reader {
     }
 
     private NumberStore readAsNumberStore(Mat5Tag tag) throws IOException {
+        if (zeroCopy) {
+            ByteBuffer view = readBufferView(source, tag.getNumBytes());
+            if (view != null) {
+                source.skip(tag.getPadding());
+                return new UniversalNumberStore(tag.getType(), view, NonOwningBufferAllocator.getShared());
+            }
+        }
+        if (readOnlyCopies)
+            return readAsReadOnlyNumberStore(tag);
         return new UniversalNumberStore(tag.getType(), readAsByteBuffer(tag), bufferAllocator);
     }
 
+    /**
+     * Data that can't be shared with a writable source is copied. Modifications to copies would not
+     * end up in the source, so they fail the same way as modifications of read-only shared memory.
+     */
+    private NumberStore readAsReadOnlyNumberStore(Mat5Tag tag) throws IOException {
+        ByteBuffer buffer = readAsByteBuffer(tag);
+        return new UniversalNumberStore(tag.getType(), buffer.asReadOnlyBuffer().order(buffer.order()),
+                NonOwningBufferAllocator.viewOf(bufferAllocator, buffer));
+    }
+
     private ByteBuffer readAsByteBuffer(Mat5Tag tag) throws IOException {
         ByteBuffer buffer = bufferAllocator.allocate(tag.getNumBytes());
         buffer.order(source.order());
@@ -663,8 +1460,11 @@ public class Mat5Reader {
     protected Mat5Reader createChildReader(Source source) {
         Mat5Reader reader = new Mat5Reader(source);
         reader.filter = this.filter;
+        reader.rootProjection = this.rootProjection;
         reader.mcos = this.mcos;
         reader.bufferAllocator = this.bufferAllocator;
+        reader.zeroCopy = this.zeroCopy;
+        reader.readOnlyCopies = this.readOnlyCopies;
         return reader;
     }
 
@@ -722,12 +1522,25 @@ public class Mat5Reader {
     private long subsysPosition = Long.MIN_VALUE;
     private boolean nextIsSubsys = false;
     private boolean mayFilterNext = false;
+    private Source prefetchRegion = null; // root entry that gets touched once accepted
     private boolean reducedHeader = false;
     protected EntryFilter filter = null;
+    private Projection rootProjection = null;
+    private Projection projection = null; // null reads everything
     private ExecutorService executorService = null;
+    private MemoryBudget readAheadBudget = null;
+    private MemoryBudget inflightBudget = null;
+    private Mat5Index index = null;
+    private long indexStart = 0;
     private boolean processSubsystem = true;
     private int maxInflateBufferSize = 2048;
+    private boolean zeroCopy = false;
+    private boolean readOnlyCopies = false;
+    private int arenaSlabSize = 0;
     protected McosRegistry mcos = new McosRegistry();
     protected BufferAllocator bufferAllocator = Mat5.getDefaultBufferAllocator();
 
+    // Typical ratio for numeric data. Only used until the actual size is known.
+    private static final long INFLATE_RATIO_ESTIMATE = 4;
+
 }
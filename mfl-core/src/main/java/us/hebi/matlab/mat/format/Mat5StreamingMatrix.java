@@ -0,0 +1,453 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.AbstractMatrixBase;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.util.Bytes;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static us.hebi.matlab.mat.format.Mat5WriteUtil.*;
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * 2D numeric matrix with a fixed number of columns that grows by appending
+ * rows, e.g., for logging synchronized time series whose length is not known
+ * beforehand.
+ * <p>
+ * MAT files store data in column-major order, so rows can't be streamed into
+ * the output directly. Appended values get buffered in a block of rows in
+ * memory. Full blocks get transposed into column-major tiles and get appended
+ * to a single temporary file. Serialization writes each column by reading the
+ * corresponding segment of every tile, so the memory use is bounded by the
+ * block size independent of the number of rows.
+ * <p>
+ * Values can be read, but the matrix can't be modified other than by appending
+ * values. Values of incomplete rows are not part of the matrix. Closing the
+ * matrix deletes the temporary file. This class is not thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public final class Mat5StreamingMatrix extends AbstractMatrixBase implements Mat5Serializable {
+
+    Mat5StreamingMatrix(int numCols, MatlabType type, boolean logical, boolean complex, File folder, int blockBytes, BufferAllocator bufferAllocator) {
+        super(new int[]{0, numCols});
+        checkArgument(numCols > 0, "number of columns must be positive");
+        checkArgument(blockBytes > 0, "block size must be positive");
+        checkArgument(folder == null || folder.isDirectory(), "invalid temporary folder: " + folder);
+        this.type = checkNotNull(type);
+        this.tagType = Mat5Type.fromNumericalType(type);
+        this.logical = logical;
+        this.complex = complex;
+        this.folder = folder;
+        this.bufferAllocator = checkNotNull(bufferAllocator);
+
+        // Use at least one row per block
+        int rowBytes = numCols * tagType.bytes();
+        this.blockRows = Math.max(1, blockBytes / (rowBytes * (complex ? 2 : 1)));
+        this.partBytes = blockRows * rowBytes;
+        this.tileBytes = partBytes * (complex ? 2 : 1);
+
+        this.real = createBlockStore();
+        this.imaginary = complex ? createBlockStore() : null;
+        this.tile = ByteBuffer.allocate(tileBytes).order(ByteOrder.nativeOrder());
+        this.element = new UniversalNumberStore(tagType,
+                ByteBuffer.allocate(tagType.bytes()).order(ByteOrder.nativeOrder()), bufferAllocator);
+    }
+
+    private UniversalNumberStore createBlockStore() {
+        ByteBuffer buffer = bufferAllocator.allocate(partBytes);
+        buffer.order(ByteOrder.nativeOrder());
+        return new UniversalNumberStore(tagType, buffer, bufferAllocator);
+    }
+
+    @Override
+    public MatlabType getType() {
+        return type;
+    }
+
+    @Override
+    public boolean isLogical() {
+        return logical;
+    }
+
+    @Override
+    public boolean isComplex() {
+        return complex;
+    }
+
+    /**
+     * @return number of rows that are buffered in memory before they get written to the temporary file
+     */
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    /**
+     * Appends a value to the current row. The row gets added to the matrix once
+     * a value has been added for every column.
+     *
+     * @param value value
+     * @throws IOException if a full block could not be written to the temporary file
+     */
+    public void addDouble(double value) throws IOException {
+        int index = getBlockIndex();
+        real.setDouble(index, value);
+        if (complex) imaginary.setLong(index, 0);
+        nextValue();
+    }
+
+    public void addLong(long value) throws IOException {
+        int index = getBlockIndex();
+        real.setLong(index, value);
+        if (complex) imaginary.setLong(index, 0);
+        nextValue();
+    }
+
+    public void addBoolean(boolean value) throws IOException {
+        addLong(value ? 1 : 0);
+    }
+
+    public void addComplex(double real, double imaginary) throws IOException {
+        checkState(complex, "Matrix is not complex");
+        int index = getBlockIndex();
+        this.real.setDouble(index, real);
+        this.imaginary.setDouble(index, imaginary);
+        nextValue();
+    }
+
+    public void addComplex(long real, long imaginary) throws IOException {
+        checkState(complex, "Matrix is not complex");
+        int index = getBlockIndex();
+        this.real.setLong(index, real);
+        this.imaginary.setLong(index, imaginary);
+        nextValue();
+    }
+
+    /**
+     * Appends an entire row
+     *
+     * @param values one value for each column
+     * @throws IOException if a full block could not be written to the temporary file
+     */
+    public void addRow(double... values) throws IOException {
+        checkRowStart(values.length);
+        for (double value : values) {
+            addDouble(value);
+        }
+    }
+
+    public void addRow(long... values) throws IOException {
+        checkRowStart(values.length);
+        for (long value : values) {
+            addLong(value);
+        }
+    }
+
+    private void checkRowStart(int numValues) {
+        checkArgument(numValues == getNumCols(), "expected one value for each column");
+        checkState(col == 0, "the current row is incomplete");
+    }
+
+    private int getBlockIndex() {
+        checkState(real != null, "Matrix has already been closed");
+        return blockRow * getNumCols() + col;
+    }
+
+    private void nextValue() throws IOException {
+        if (++col < getNumCols())
+            return;
+
+        // Complete row
+        if (tagType.bytes() * ((long) getNumRows() + 1) * getNumCols() > Integer.MAX_VALUE)
+            throw new IllegalStateException("Matrix exceeds the maximum size of a MAT 5 array");
+        col = 0;
+        dims[0]++;
+        if (++blockRow == blockRows)
+            writeBlock();
+    }
+
+    /**
+     * Transposes the current block into a column-major tile and appends it to the temporary file
+     */
+    private void writeBlock() throws IOException {
+        if (channel == null) {
+            tmpFile = File.createTempFile("mfl-", ".tmp", folder);
+            channel = new RandomAccessFile(tmpFile, "rw").getChannel();
+        }
+        transposeBlock(blockRows);
+        long position = (long) numTiles * tileBytes;
+        while (tile.hasRemaining()) {
+            position += channel.write(tile, position);
+        }
+        numTiles++;
+        blockRow = 0;
+    }
+
+    /**
+     * Copies the first rows of the block into the tile buffer in column-major order. The
+     * imaginary part gets stored after the real part.
+     */
+    private void transposeBlock(int numRows) {
+        tile.clear();
+        transpose(real.buffer, numRows, 0);
+        if (complex)
+            transpose(imaginary.buffer, numRows, partBytes);
+        tile.limit(tileBytes);
+    }
+
+    private void transpose(ByteBuffer block, int numRows, int offset) {
+        final int numCols = getNumCols();
+        final int size = tagType.bytes();
+        int dst = offset;
+        for (int c = 0; c < numCols; c++) {
+            for (int r = 0; r < numRows; r++) {
+                int src = (r * numCols + c) * size;
+                switch (size) {
+                    case 1:
+                        tile.put(dst, block.get(src));
+                        break;
+                    case 2:
+                        tile.putShort(dst, block.getShort(src));
+                        break;
+                    case 4:
+                        tile.putInt(dst, block.getInt(src));
+                        break;
+                    default:
+                        tile.putLong(dst, block.getLong(src));
+                        break;
+                }
+                dst += size;
+            }
+        }
+    }
+
+    @Override
+    public int getMat5Size(String name) {
+        int data = tagType.computeSerializedSize(getNumElements());
+        return Mat5.MATRIX_TAG_SIZE
+                + computeArrayHeaderSize(name, this)
+                + (complex ? 2 * data : data);
+    }
+
+    @Override
+    public void writeMat5(String name, boolean isGlobal, Sink sink) throws IOException {
+        checkState(real != null, "Matrix has already been closed");
+        writeMatrixTag(name, this, sink);
+        writeArrayHeader(name, isGlobal, this, sink);
+
+        // Rows that are still in memory get written from a transposed tile
+        transposeBlock(blockRow);
+        writePart(0, sink);
+        if (complex) writePart(1, sink);
+    }
+
+    private void writePart(int part, Sink sink) throws IOException {
+        final int numElements = getNumElements();
+        final int size = tagType.bytes();
+        final int segmentBytes = blockRows * size;
+        final ByteBuffer segment = ByteBuffer.allocate(numTiles > 0 ? segmentBytes : 0).order(ByteOrder.nativeOrder());
+        final ByteBuffer pending = tile.duplicate().order(tile.order());
+
+        tagType.writeTag(numElements, sink);
+        for (int c = 0; c < getNumCols(); c++) {
+
+            // Full tiles in the temporary file
+            for (int t = 0; t < numTiles; t++) {
+                segment.clear();
+                long position = (long) t * tileBytes + part * partBytes + (long) c * segmentBytes;
+                readFully(segment, position);
+                segment.flip();
+                writeSegment(segment, sink);
+            }
+
+            // Remaining rows in memory
+            int offset = part * partBytes + c * blockRow * size;
+            pending.limit(offset + blockRow * size).position(offset);
+            writeSegment(pending, sink);
+
+        }
+        tagType.writePadding(numElements, sink);
+    }
+
+    private void writeSegment(ByteBuffer segment, Sink sink) throws IOException {
+        // Segments get reused, so the order needs to be reset after switching the data
+        if (sink.order() != ByteOrder.nativeOrder() && tagType.bytes() > 1) {
+            Bytes.reverseByteOrder(segment, tagType.bytes());
+            segment.order(ByteOrder.nativeOrder());
+        }
+        sink.writeByteBuffer(segment);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+        }
+    }
+
+    @Override
+    public long getLong(int index) {
+        return orLogical(getStore(index, false).getLong(getStoreIndex(index)));
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return orLogical(getStore(index, false).getDouble(getStoreIndex(index)));
+    }
+
+    @Override
+    public long getImaginaryLong(int index) {
+        return orLogical(complex ? getStore(index, true).getLong(getStoreIndex(index)) : 0);
+    }
+
+    @Override
+    public double getImaginaryDouble(int index) {
+        return orLogical(complex ? getStore(index, true).getDouble(getStoreIndex(index)) : 0);
+    }
+
+    /**
+     * Returns the store that holds the value at the column-major index. Values that have
+     * already been written to the temporary file get read into a single element store.
+     */
+    private NumberStore getStore(int index, boolean imaginaryPart) {
+        checkState(real != null, "Matrix has already been closed");
+        checkArgument(index >= 0 && index < getNumElements(), "index out of bounds");
+        int row = index % getNumRows();
+        if (row >= numTiles * blockRows)
+            return imaginaryPart ? imaginary : real;
+
+        int size = tagType.bytes();
+        int c = index / getNumRows();
+        long position = (long) (row / blockRows) * tileBytes
+                + (imaginaryPart ? partBytes : 0)
+                + ((long) c * blockRows + row % blockRows) * size;
+        try {
+            element.buffer.clear();
+            readFully(element.buffer, position);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read from temporary file", e);
+        }
+        return element;
+    }
+
+    private int getStoreIndex(int index) {
+        int row = index % getNumRows();
+        if (row < numTiles * blockRows)
+            return 0;
+        return (row - numTiles * blockRows) * getNumCols() + index / getNumRows();
+    }
+
+    @Override
+    protected int getColumnMajorIndex(int row, int col) {
+        checkNumDimensions(2);
+        return checkIndexBounds(row, 0) + checkIndexBounds(col, 1) * getNumRows();
+    }
+
+    @Override
+    protected int getColumnMajorIndex(int[] indices) {
+        return getColumnMajorIndex(indices[0], indices[1]);
+    }
+
+    @Override
+    public void setLong(int index, long value) {
+        throw new UnsupportedOperationException("Streaming matrices are append-only");
+    }
+
+    @Override
+    public void setDouble(int index, double value) {
+        throw new UnsupportedOperationException("Streaming matrices are append-only");
+    }
+
+    @Override
+    public void setImaginaryLong(int index, long value) {
+        throw new UnsupportedOperationException("Streaming matrices are append-only");
+    }
+
+    @Override
+    public void setImaginaryDouble(int index, double value) {
+        throw new UnsupportedOperationException("Streaming matrices are append-only");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (real == null)
+            return;
+        real.close();
+        real = null;
+        if (imaginary != null) {
+            imaginary.close();
+            imaginary = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            if (!tmpFile.delete())
+                throw new IOException("Unable to delete temporary file: " + tmpFile);
+        }
+    }
+
+    private final MatlabType type;
+    private final Mat5Type tagType;
+    private final boolean logical;
+    private final boolean complex;
+    private final File folder;
+    private final BufferAllocator bufferAllocator;
+
+    // Block layout
+    private final int blockRows;
+    private final int partBytes;
+    private final int tileBytes;
+
+    // Rows in memory
+    private UniversalNumberStore real;
+    private UniversalNumberStore imaginary;
+    private int blockRow = 0;
+    private int col = 0;
+
+    // Temporary storage
+    private final ByteBuffer tile;
+    private final UniversalNumberStore element;
+    private File tmpFile = null;
+    private FileChannel channel = null;
+    private int numTiles = 0;
+
+    @Override
+    protected int subHashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    protected boolean subEqualsGuaranteedSameClass(Object otherGuaranteedSameClass) {
+        return this == otherGuaranteedSameClass;
+    }
+
+}
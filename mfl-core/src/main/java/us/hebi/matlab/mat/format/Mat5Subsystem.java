@@ -71,27 +71,33 @@ public final class Mat5Subsystem extends AbstractArray implements Mat5Serializab
         UInt8.writeByteBufferWithTag(buffer.slice(), sink);
     }
 
-    void processReferences(McosRegistry mcosRegistry) throws IOException {
+    synchronized void processReferences(McosRegistry mcosRegistry) throws IOException {
         if (mcosRegistry.getReferences().isEmpty())
             return;
 
-        // Read the mat file that is contained within the byte buffer
-        subFile = Mat5.newReader(Sources.wrap(buffer.slice()))
-                .setMcosRegistry(mcosRegistry)
-                .setBufferAllocator(bufferAllocator)
-                .disableSubsystemProcessing() // the Subsystem's subsystem does not contain useful data
-                .setReducedHeader(true)
-                .readMat();
-
-        // The first entry in the top level subsystem (end of root file) contains the
-        // 'FileWrapper__' object which contains the data backing the various reference
-        // classes, e.g., handles. Note that more than one references can reference the
-        // same data, and that the referenced objects may themselves be references.
-        McosFileWrapper fileWrapper = subFile.getStruct(0).get("MCOS");
-        List<McosObject> objects = fileWrapper.parseObjects(mcosRegistry);
+        // Lazily loaded files may process references more than once, so the
+        // objects only get parsed once and are shared by all later references.
+        if (objects == null) {
+
+            // Read the mat file that is contained within the byte buffer
+            subFile = Mat5.newReader(Sources.wrap(buffer.slice()))
+                    .setMcosRegistry(mcosRegistry)
+                    .setBufferAllocator(bufferAllocator)
+                    .disableSubsystemProcessing() // the Subsystem's subsystem does not contain useful data
+                    .setReducedHeader(true)
+                    .readMat();
+
+            // The first entry in the top level subsystem (end of root file) contains the
+            // 'FileWrapper__' object which contains the data backing the various reference
+            // classes, e.g., handles. Note that more than one references can reference the
+            // same data, and that the referenced objects may themselves be references.
+            McosFileWrapper fileWrapper = subFile.getStruct(0).get("MCOS");
+            objects = fileWrapper.parseObjects(mcosRegistry);
+            objects.add(0, null); // bump count to match off-by-one index
+
+        }
 
         // Update references of all handle classes
-        objects.add(0, null); // bump count to match off-by-one index
         for (McosReference reference : mcosRegistry.getReferences()) {
             reference.setReferences(objects);
         }
@@ -106,11 +112,13 @@ public final class Mat5Subsystem extends AbstractArray implements Mat5Serializab
         buffer = null;
         bufferAllocator = null;
         subFile = null;
+        objects = null;
     }
 
     private ByteBuffer buffer;
     private BufferAllocator bufferAllocator;
     private Mat5File subFile;
+    private List<McosObject> objects;
 
     @Override
     protected int subHashCode() {
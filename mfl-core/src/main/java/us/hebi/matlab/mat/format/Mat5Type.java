@@ -62,12 +62,16 @@ public enum Mat5Type {
         if (bytes() > 1 && buffer.order() != sink.order())
             throw new IllegalArgumentException("Buffer order does not match sink order");
 
+        // Restore the position even if the write gets aborted, e.g., when sampling a prefix
         int position = buffer.position();
         int numElements = buffer.remaining() / bytes();
-        writeTag(numElements, sink);
-        sink.writeByteBuffer(buffer);
-        writePadding(numElements, sink);
-        buffer.position(position);
+        try {
+            writeTag(numElements, sink);
+            sink.writeByteBuffer(buffer);
+            writePadding(numElements, sink);
+        } finally {
+            buffer.position(position);
+        }
     }
 
     void writeBytesWithTag(byte[] values, Sink sink) throws IOException {
@@ -23,10 +23,15 @@ package us.hebi.matlab.mat.format;
 import us.hebi.matlab.mat.types.Array;
 import us.hebi.matlab.mat.types.Opaque;
 import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.types.Sinks;
 import us.hebi.matlab.mat.util.Casts;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.zip.Deflater;
 
 import static us.hebi.matlab.mat.format.Mat5Type.*;
@@ -49,11 +54,20 @@ public class Mat5WriteUtil {
     }
 
     public static void writeArray(String name, boolean isGlobal, Array array, Sink sink) throws IOException {
-        if (array instanceof Mat5Serializable) {
+        if (!(array instanceof Mat5Serializable))
+            throw new IllegalArgumentException("Array does not support the MAT5 format");
+        if (sizeCache.get() != null) {
             ((Mat5Serializable) array).writeMat5(name, isGlobal, sink);
             return;
         }
-        throw new IllegalArgumentException("Array does not support the MAT5 format");
+
+        // Root of a write. Nested sizes are needed for every parent tag, so they get cached for the duration
+        sizeCache.set(new IdentityHashMap<Array, Integer>());
+        try {
+            ((Mat5Serializable) array).writeMat5(name, isGlobal, sink);
+        } finally {
+            sizeCache.remove();
+        }
     }
 
     public static int computeArraySize(Array array) {
@@ -61,9 +75,31 @@ public class Mat5WriteUtil {
     }
 
     public static int computeArraySize(String name, Array array) {
-        if (array instanceof Mat5Serializable)
-            return ((Mat5Serializable) array).getMat5Size(name);
-        throw new IllegalArgumentException("Array does not support the MAT5 format");
+        if (!(array instanceof Mat5Serializable))
+            throw new IllegalArgumentException("Array does not support the MAT5 format");
+        Mat5Serializable serializable = (Mat5Serializable) array;
+        Map<Array, Integer> cache = sizeCache.get();
+
+        // Root of a size computation
+        if (cache == null) {
+            sizeCache.set(new IdentityHashMap<Array, Integer>());
+            try {
+                return serializable.getMat5Size(name);
+            } finally {
+                sizeCache.remove();
+            }
+        }
+
+        // Nested arrays don't have a name, so the size only depends on the array. Sizes
+        // are only cached within a single pass, so modifications in between are fine.
+        if (name != null && !name.isEmpty())
+            return serializable.getMat5Size(name);
+        Integer size = cache.get(array);
+        if (size == null) {
+            size = serializable.getMat5Size(name);
+            cache.put(array, size);
+        }
+        return size;
     }
 
     public static int computeArrayHeaderSize(String name, Array array) {
@@ -74,7 +110,8 @@ public class Mat5WriteUtil {
     }
 
     public static void writeMatrixTag(String name, Mat5Serializable array, Sink sink) throws IOException {
-        Matrix.writeTag(array.getMat5Size(name) - Mat5.MATRIX_TAG_SIZE, sink);
+        int size = array instanceof Array ? computeArraySize(name, (Array) array) : array.getMat5Size(name);
+        Matrix.writeTag(size - Mat5.MATRIX_TAG_SIZE, sink);
     }
 
     public static void writeArrayHeader(String name, boolean isGlobal, Array array, Sink sink) throws IOException {
@@ -161,6 +198,77 @@ public class Mat5WriteUtil {
 
     }
 
+    /**
+     * Same as {@link #writeArrayDeflated(String, boolean, Array, Sink, Deflater)}, but for sinks that
+     * don't support seeking. The compressed data gets held in chained chunks from the buffer allocator
+     * until the size is known, so only the current entry needs to be kept in memory.
+     */
+    static void writeArrayDeflatedBuffered(String name, boolean global, Array array, Sink sink, Deflater deflater,
+                                           BufferAllocator bufferAllocator) throws IOException {
+        ChunkedOutputStream chunks = new ChunkedOutputStream(bufferAllocator, DEFLATE_CHUNK_SIZE);
+        try {
+
+            // Compress matrix data
+            Sink compressed = Sinks.wrapNonSeeking(chunks).order(sink.order()).writeDeflated(deflater);
+            writeArray(name, global, array, compressed);
+            compressed.close(); // triggers flush/finish
+
+            // Write tag with the known size followed by the data
+            Compressed.writeTag(Casts.sint32(chunks.size()), false, sink);
+            chunks.writeTo(sink);
+
+        } finally {
+            chunks.close();
+        }
+    }
+
+    /**
+     * Serializes the beginning of an array, e.g., so that a compression policy can estimate the
+     * compressibility of an entry. Serialization gets aborted once the buffer is full, so the cost
+     * is mostly bounded by the sample size. Arrays need to keep a consistent state if writing
+     * gets aborted by the sink.
+     *
+     * @param buffer target buffer that gets filled up to its limit and flipped
+     */
+    static void writeArrayPrefix(String name, boolean global, Array array, final ByteBuffer buffer) throws IOException {
+        Sink prefix = Sinks.wrapNonSeeking(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                int n = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                if (!buffer.hasRemaining())
+                    throw new PrefixCompleteException();
+            }
+        }, 1024).order(buffer.order());
+        try {
+            writeArray(name, global, array, prefix);
+            prefix.close();
+        } catch (PrefixCompleteException complete) {
+            // Expected for arrays that are larger than the buffer
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Aborts serialization once the prefix buffer is full. Instances are created per call because
+     * exceptions are mutable (e.g. suppressed exceptions), and they skip creating a stack trace.
+     */
+    private static class PrefixCompleteException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+    }
+
     /**
      * MATLAB has a limit for variable names and struct fields of 63 characters (R2018b)
      * (64 w/ null terminator). If the input name exceeds this limit, the field
@@ -191,5 +299,8 @@ public class Mat5WriteUtil {
 
     private static final int NAME_LENGTH_MAX = 63; // Spec says 31, but R2018b supports 63
     private static final int DUMMY_SIZE = 0;
+    private static final int DEFLATE_CHUNK_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Map<Array, Integer>> sizeCache = new ThreadLocal<Map<Array, Integer>>();
 
 }
@@ -21,15 +21,22 @@
 package us.hebi.matlab.mat.format;
 
 import us.hebi.matlab.mat.types.*;
+import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.MemoryBudget;
 import us.hebi.matlab.mat.util.Tasks;
+import us.hebi.matlab.mat.util.ZlibPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.Deflater;
 
 import static us.hebi.matlab.mat.format.Mat5WriteUtil.*;
@@ -53,6 +60,19 @@ public final class Mat5Writer {
         return this;
     }
 
+    /**
+     * Chooses the deflate level of each root entry individually, e.g., to skip compressing data
+     * that barely shrinks. The policy overrides the level set by {@link #setDeflateLevel(int)}.
+     *
+     * @param compressionPolicy policy, or null to use the same level for all entries
+     * @return this
+     * @see SamplingCompressionPolicy
+     */
+    public Mat5Writer setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
     /**
      * Compressing elements tends to be by far the most expensive part of writing MAT5 files.
      * This method enables the deflation to happen concurrently, i.e., by multiple threads. Note
@@ -83,10 +103,166 @@ public final class Mat5Writer {
     public Mat5Writer enableConcurrentCompression(ExecutorService executorService, BufferAllocator bufferAllocator) {
         this.executorService = checkNotNull(executorService, "empty executor service");
         this.bufferAllocator = checkNotNull(bufferAllocator, "empty buffer allocator");
-        this.deflater = null;
         return this;
     }
 
+    /**
+     * Limits the number of bytes that may be held by temporary buffers of concurrently
+     * compressed entries that have not been written to the sink yet. Finished entries
+     * get written as soon as all preceding entries have been written, and the calling
+     * thread blocks when the limit is reached. Entries that are larger than the limit
+     * get compressed by themselves. By default, the number of bytes is not limited.
+     *
+     * @param maxBufferedBytes max number of bytes in temporary buffers
+     * @return this
+     */
+    public Mat5Writer setMaxBufferedBytes(long maxBufferedBytes) {
+        checkState(flushActions.isEmpty(), "Limit can't be changed while entries are pending");
+        this.bufferBudget = new MemoryBudget(maxBufferedBytes);
+        return this;
+    }
+
+    /**
+     * Splits the compression of large root entries into blocks that get deflated concurrently,
+     * similar to 'pigz'. Each block uses the end of the previous block as a preset dictionary, so
+     * the compression ratio stays close to single threaded compression, and the blocks get combined
+     * into a single zlib stream that can still be read by MATLAB. This helps with files that are
+     * dominated by a single large variable, which would otherwise be compressed by a single thread.
+     * <p>
+     * Entries that span at least two blocks get split. This only applies when concurrent
+     * compression is enabled and the runtime supports flushing deflaters (Java 7+). Otherwise
+     * entries get compressed as a whole.
+     * <p>
+     * Finished blocks get written to seekable sinks in order while the entry is still being
+     * serialized, so only a limited number of blocks is held in memory at a time. Sinks that
+     * can't seek need to hold all blocks of an entry until its compressed size is known.
+     *
+     * @param blockSize number of uncompressed bytes per block, e.g., 1 MB
+     * @return this
+     */
+    public Mat5Writer enableBlockCompression(int blockSize) {
+        checkArgument(blockSize >= MIN_BLOCK_SIZE, "block size needs to be at least " + MIN_BLOCK_SIZE + " bytes");
+        this.blockSize = blockSize;
+        this.blockBudget = new MemoryBudget((long) blockSize * Math.max(4, 4 * Runtime.getRuntime().availableProcessors()));
+        this.independentBlocks = false;
+        return this;
+    }
+
+    /**
+     * Same as {@link #enableBlockCompression(int)}, but each block gets compressed without referring
+     * to previous blocks and ends at a full flush point. The file remains a normal MAT file, but the
+     * blocks of a single entry can also be inflated concurrently. The block offsets get stored in the
+     * {@link Mat5Index} (see {@link #enableIndex()}), which a {@link Mat5Reader} with concurrent
+     * decompression uses when reading entries via {@link Mat5Reader#readMatLazily(Mat5Index)}.
+     * <p>
+     * Not having a preset dictionary costs a bit of compression ratio, so the block size should
+     * not be too small.
+     *
+     * @param blockSize number of uncompressed bytes per block, e.g., 1 MB
+     * @return this
+     */
+    public Mat5Writer enableIndependentBlockCompression(int blockSize) {
+        enableBlockCompression(blockSize);
+        this.independentBlocks = true;
+        return this;
+    }
+
+    /**
+     * Keeps track of the location and header of every written root entry, so that a
+     * {@link Mat5Index} can be stored next to the MAT file. This requires a sink that
+     * supports querying the position.
+     *
+     * @return this
+     */
+    public Mat5Writer enableIndex() {
+        this.indexEntries = new ArrayList<Mat5Index.Entry>();
+        return this;
+    }
+
+    /**
+     * Returns the index of all root entries that have been written so far. Entries
+     * that are written concurrently only show up after calling {@link #flush()}.
+     *
+     * @return index of the written root entries
+     */
+    public Mat5Index getIndex() {
+        checkState(indexEntries != null, "Index is not enabled");
+        return new Mat5Index(indexDescription, indexEnd, new ArrayList<Mat5Index.Entry>(indexEntries));
+    }
+
+    /**
+     * Enables recording the deflate level and the sizes of each root entry. This
+     * requires a sink that supports querying the position.
+     *
+     * @return this
+     */
+    public Mat5Writer enableStatistics() {
+        this.statistics = new ArrayList<EntryStatistics>();
+        return this;
+    }
+
+    /**
+     * Returns statistics of all root entries that have been written so far. Entries
+     * that are written concurrently only show up after calling {@link #flush()}.
+     *
+     * @return statistics in file order
+     */
+    public List<EntryStatistics> getStatistics() {
+        checkState(statistics != null, "Statistics are not enabled");
+        return new ArrayList<EntryStatistics>(statistics);
+    }
+
+    public static class EntryStatistics {
+
+        EntryStatistics(String name, int deflateLevel, long uncompressedSize, long storedSize) {
+            this.name = name;
+            this.deflateLevel = deflateLevel;
+            this.uncompressedSize = uncompressedSize;
+            this.storedSize = storedSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return deflate level of the entry, or Deflater.NO_COMPRESSION if it was stored uncompressed
+         */
+        public int getDeflateLevel() {
+            return deflateLevel;
+        }
+
+        /**
+         * @return serialized size of the uncompressed entry including the matrix tag
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        /**
+         * @return number of bytes in the file including the tag
+         */
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        @Override
+        public String toString() {
+            return "EntryStatistics{" +
+                    "name='" + name + '\'' +
+                    ", deflateLevel=" + deflateLevel +
+                    ", uncompressedSize=" + uncompressedSize +
+                    ", storedSize=" + storedSize +
+                    '}';
+        }
+
+        private final String name;
+        private final int deflateLevel;
+        private final long uncompressedSize;
+        private final long storedSize;
+
+    }
+
     public Mat5Writer writeMat(MatFile matFile) throws IOException {
         if (matFile instanceof Mat5File) {
             return writeMat((Mat5File) matFile);
@@ -95,19 +271,130 @@ public final class Mat5Writer {
     }
 
     private Mat5Writer writeMat(Mat5File matFile) throws IOException {
+        // Check before writing anything rather than failing at the end
+        checkState(isSeekable(sink) || matFile.hasReducedHeader() || matFile.getSubsystem() == null,
+                "Writing a subsystem (e.g. MATLAB objects) requires a sink that supports seeking, " +
+                        "because the subsystem offset in the header gets updated at the end");
         if (!matFile.hasReducedHeader())
             headerStart = sink.position();
+        if (indexEntries != null) {
+            fileStart = sink.position();
+            indexDescription = matFile.getDescription();
+        }
         matFile.writeFileHeader(sink);
+        List<MatFile.Entry> entries = new ArrayList<MatFile.Entry>(matFile.getNumEntries());
         for (MatFile.Entry entry : matFile.getEntries()) {
-            writeEntry(entry);
+            entries.add(entry);
         }
-        if(matFile.getSubsystem() != null){
-            writeEntry(matFile.getSubsystem());
+        if (matFile.getSubsystem() != null) {
+            entries.add(matFile.getSubsystem());
         }
+        writeEntries(entries);
         flush();
         return this;
     }
 
+    /**
+     * Writes entries in the input order, but starts compressing the largest entries of
+     * each batch first so that the total time is not dominated by a large entry that
+     * happens to be queued last. A batch consists of consecutive entries that fit into
+     * the buffer limit.
+     */
+    private void writeEntries(List<MatFile.Entry> entries) throws IOException {
+        List<PendingEntry> batch = new ArrayList<PendingEntry>();
+        long batchBytes = 0;
+        for (MatFile.Entry entry : entries) {
+            checkRootName(entry.getName(), entry.getValue());
+            RootSize size = new RootSize(entry.getName(), entry.getValue());
+            int level = getDeflateLevel(entry.getName(), entry.isGlobal(), entry.getValue(), size);
+            if (!isBufferedCompressionEnabled(size, level)) {
+                submitBatch(batch);
+                batchBytes = 0;
+                writeArray(entry.getName(), entry.isGlobal(), entry.getValue(), level, size);
+                continue;
+            }
+
+            PendingEntry pending = new PendingEntry(entry, size, size.get() + 256, level);
+            if (bufferBudget != null && batchBytes + pending.bufferSize > bufferBudget.getMaxBytes()) {
+                submitBatch(batch);
+                batchBytes = 0;
+            }
+            batch.add(pending);
+            batchBytes += pending.bufferSize;
+        }
+        submitBatch(batch);
+    }
+
+    private void submitBatch(List<PendingEntry> batch) throws IOException {
+        if (batch.isEmpty())
+            return;
+
+        // Reserve memory and queue in input order
+        List<PendingEntry> schedule = new ArrayList<PendingEntry>(batch);
+        for (PendingEntry pending : batch) {
+            MatFile.Entry entry = pending.entry;
+            pending.task = createCompressionTask(entry.getName(), entry.isGlobal(), entry.getValue(), pending.size, pending.bufferSize, pending.deflateLevel);
+        }
+        for (PendingEntry pending : batch) {
+            flushActions.add(pending.task);
+        }
+
+        // Start with the largest entries
+        Collections.sort(schedule, LARGEST_FIRST);
+        for (PendingEntry pending : schedule) {
+            executorService.execute(pending.task);
+        }
+        batch.clear();
+        writeCompletedActions();
+    }
+
+    private static class PendingEntry {
+
+        PendingEntry(MatFile.Entry entry, RootSize size, long bufferSize, int deflateLevel) {
+            this.entry = entry;
+            this.size = size;
+            this.bufferSize = bufferSize;
+            this.deflateLevel = deflateLevel;
+        }
+
+        final MatFile.Entry entry;
+        final RootSize size;
+        final long bufferSize;
+        final int deflateLevel;
+        FutureTask<FlushAction> task;
+
+    }
+
+    /**
+     * Serialized size of a root entry. Deciding how to write an entry may need the size
+     * several times, so it gets computed at most once rather than walking the array each time.
+     */
+    private static class RootSize {
+
+        RootSize(String name, Array array) {
+            this.name = name;
+            this.array = array;
+        }
+
+        int get() {
+            if (size < 0)
+                size = computeArraySize(name, array);
+            return size;
+        }
+
+        private final String name;
+        private final Array array;
+        private int size = -1;
+
+    }
+
+    private static final Comparator<PendingEntry> LARGEST_FIRST = new Comparator<PendingEntry>() {
+        @Override
+        public int compare(PendingEntry a, PendingEntry b) {
+            return a.bufferSize < b.bufferSize ? 1 : (a.bufferSize == b.bufferSize ? 0 : -1);
+        }
+    };
+
     public Mat5Writer writeEntry(MatFile.Entry entry) throws IOException {
         return writeArray(entry.getName(), entry.isGlobal(), entry.getValue());
     }
@@ -117,10 +404,13 @@ public final class Mat5Writer {
     }
 
     public Mat5Writer writeArray(final String name, final boolean isGlobal, final Array array) throws IOException {
-        if ((name == null || name.isEmpty())
-                && !(array instanceof McosReference)
-                && !(array instanceof Mat5Subsystem))
-            throw new IllegalArgumentException("Root Array can't have an empty name");
+        checkRootName(name, array);
+        RootSize size = new RootSize(name, array);
+        return writeArray(name, isGlobal, array, getDeflateLevel(name, isGlobal, array, size), size);
+    }
+
+    private Mat5Writer writeArray(final String name, final boolean isGlobal, final Array array, final int deflateLevel,
+                                  final RootSize size) throws IOException {
         final boolean isSubsystem = array instanceof Mat5Subsystem;
 
         if (deflateLevel == Deflater.NO_COMPRESSION) {
@@ -130,7 +420,9 @@ public final class Mat5Writer {
 
                 // No queue, so we can write immediately
                 if (isSubsystem) nextEntryIsSubsystem();
+                long start = getIndexPosition();
                 Mat5WriteUtil.writeArray(name, isGlobal, array, sink);
+                addIndexEntry(start, name, isGlobal, array, size, Deflater.NO_COMPRESSION);
 
             } else {
 
@@ -138,10 +430,13 @@ public final class Mat5Writer {
                 FlushAction action = new FlushAction() {
                     public void run() throws IOException {
                         if (isSubsystem) nextEntryIsSubsystem();
+                        long start = getIndexPosition();
                         Mat5WriteUtil.writeArray(name, isGlobal, array, sink);
+                        addIndexEntry(start, name, isGlobal, array, size, Deflater.NO_COMPRESSION);
                     }
                 };
                 flushActions.add(Tasks.wrapAsFuture(action));
+                writeCompletedActions();
 
             }
 
@@ -152,59 +447,216 @@ public final class Mat5Writer {
             checkState(flushActions.isEmpty(), "Expected flush actions to be empty when writing single threaded");
             if (isSubsystem) nextEntryIsSubsystem();
 
-            // Reuse deflater
-            if (deflater == null) {
-                deflater = new Deflater(deflateLevel);
-            } else {
-                deflater.setLevel(deflateLevel);
-                deflater.reset();
+            long start = getIndexPosition();
+            Deflater deflater = ZlibPool.getDefault().borrowDeflater(deflateLevel);
+            try {
+                if (isSeekable(sink))
+                    Mat5WriteUtil.writeArrayDeflated(name, isGlobal, array, sink, deflater);
+                else
+                    Mat5WriteUtil.writeArrayDeflatedBuffered(name, isGlobal, array, sink, deflater, bufferAllocator);
+            } finally {
+                ZlibPool.getDefault().release(deflater);
             }
-
-            Mat5WriteUtil.writeArrayDeflated(name, isGlobal, array, sink, deflater);
+            addIndexEntry(start, name, isGlobal, array, size, deflateLevel);
             return this;
 
+        } else if (isBlockCompressionEnabled(size, deflateLevel)) {
+
+            // Serialize in the calling thread and deflate blocks concurrently
+            final BlockDeflater blocks = new BlockDeflater(executorService, deflateLevel, blockSize, blockBudget, independentBlocks);
+            if (isSeekable(sink)) {
+
+                // Write finished blocks while serializing, which requires earlier entries to be written first
+                while (!flushActions.isEmpty()) {
+                    writeNextAction();
+                }
+                if (isSubsystem) nextEntryIsSubsystem();
+                long start = getIndexPosition();
+                blocks.streamTo(sink);
+                writeBlocks(name, isGlobal, array, blocks);
+                blocks.writeTo(sink);
+                addIndexEntry(start, name, isGlobal, array, size, blocks);
+                return this;
+
+            }
+            writeBlocks(name, isGlobal, array, blocks);
+
+            // Combine in flush action
+            FlushAction action = new FlushAction() {
+                public void run() throws IOException {
+                    if (isSubsystem) nextEntryIsSubsystem();
+                    long start = getIndexPosition();
+                    blocks.writeTo(sink);
+                    addIndexEntry(start, name, isGlobal, array, size, blocks);
+                }
+            };
+            flushActions.add(Tasks.wrapAsFuture(action));
+            writeCompletedActions();
+
         } else {
 
             // Write compressed entries into temporary buffers, and combine them in flush action
-            final Deflater deflater = new Deflater(deflateLevel);
-            final BufferAllocator bufferAllocator = this.bufferAllocator;
-            flushActions.add(executorService.submit(new Callable<FlushAction>() {
-                @Override
-                public FlushAction call() throws Exception {
-
-                    // Create temporary buffer
-                    int maxExpectedSize = computeArraySize(name, array) + 256;
-                    final ByteBuffer buffer = bufferAllocator.allocate(maxExpectedSize);
-                    Sink tmpSink = Sinks.wrap(buffer).order(sink.order());
+            FutureTask<FlushAction> task = createCompressionTask(name, isGlobal, array, size, size.get() + 256, deflateLevel);
+            flushActions.add(task);
+            executorService.execute(task);
+            writeCompletedActions();
+
+        }
 
+        return this;
+    }
+
+    /**
+     * Reserves space for the temporary buffer and creates a task that compresses the array into it.
+     * The calling thread writes finished entries while it waits for the buffer limit.
+     */
+    private FutureTask<FlushAction> createCompressionTask(final String name, final boolean isGlobal, final Array array, final RootSize size,
+                                                          long bufferSize, final int deflateLevel) throws IOException {
+        final boolean isSubsystem = array instanceof Mat5Subsystem;
+        final int maxExpectedSize = Casts.sint32(bufferSize);
+        final long reservedBytes = reserveBufferedBytes(maxExpectedSize);
+        final BufferAllocator bufferAllocator = this.bufferAllocator;
+        return new FutureTask<FlushAction>(new Callable<FlushAction>() {
+            @Override
+            public FlushAction call() throws Exception {
+
+                // Create temporary buffer
+                final ByteBuffer buffer;
+                try {
+                    buffer = bufferAllocator.allocate(maxExpectedSize);
+                } catch (RuntimeException e) {
+                    releaseBufferedBytes(reservedBytes);
+                    throw e;
+                }
+
+                try {
                     // Compress async into temporary buffer
-                    Mat5WriteUtil.writeArrayDeflated(name, isGlobal, array, tmpSink, deflater);
+                    Sink tmpSink = Sinks.wrap(buffer).order(sink.order());
+                    Deflater deflater = ZlibPool.getDefault().borrowDeflater(deflateLevel);
+                    try {
+                        Mat5WriteUtil.writeArrayDeflated(name, isGlobal, array, tmpSink, deflater);
+                    } finally {
+                        ZlibPool.getDefault().release(deflater);
+                    }
                     tmpSink.close();
                     buffer.flip();
+                } catch (Exception e) {
+                    bufferAllocator.release(buffer);
+                    releaseBufferedBytes(reservedBytes);
+                    throw e;
+                }
 
-                    // Combine in flushing thread
-                    return new FlushAction() {
-                        public void run() throws IOException {
-                            try {
-                                if (isSubsystem) nextEntryIsSubsystem();
-                                sink.writeByteBuffer(buffer);
-                            } finally {
-                                bufferAllocator.release(buffer);
-                            }
+                // Combine in flushing thread
+                return new FlushAction() {
+                    public void run() throws IOException {
+                        try {
+                            if (isSubsystem) nextEntryIsSubsystem();
+                            long start = getIndexPosition();
+                            sink.writeByteBuffer(buffer);
+                            addIndexEntry(start, name, isGlobal, array, size, deflateLevel);
+                        } finally {
+                            bufferAllocator.release(buffer);
+                            releaseBufferedBytes(reservedBytes);
                         }
-                    };
-                }
-            }));
+                    }
+                };
+            }
+        });
+    }
 
+    private long reserveBufferedBytes(long numBytes) throws IOException {
+        if (bufferBudget == null)
+            return 0;
+        long reserved = Math.min(numBytes, bufferBudget.getMaxBytes());
+        while (!bufferBudget.tryAcquire(reserved)) {
+            if (flushActions.isEmpty()) {
+                bufferBudget.acquire(reserved);
+                break;
+            }
+            writeNextAction();
         }
+        return reserved;
+    }
 
-        return this;
+    private void releaseBufferedBytes(long numBytes) {
+        if (bufferBudget != null)
+            bufferBudget.release(numBytes);
+    }
+
+    private static void checkRootName(String name, Array array) {
+        if ((name == null || name.isEmpty())
+                && !(array instanceof McosReference)
+                && !(array instanceof Mat5Subsystem))
+            throw new IllegalArgumentException("Root Array can't have an empty name");
+    }
+
+    private int getDeflateLevel(String name, boolean isGlobal, Array array, RootSize size) throws IOException {
+        if (compressionPolicy == null)
+            return deflateLevel;
+        ByteBuffer sample = null;
+        int sampleSize = compressionPolicy.getSampleSize();
+        if (sampleSize > 0) {
+            sample = ByteBuffer.allocate(Math.min(sampleSize, size.get())).order(sink.order());
+            Mat5WriteUtil.writeArrayPrefix(name, isGlobal, array, sample);
+        }
+        return compressionPolicy.getDeflateLevel(name, array, sample);
+    }
+
+    private boolean isBufferedCompressionEnabled(RootSize size, int deflateLevel) {
+        return deflateLevel != Deflater.NO_COMPRESSION
+                && executorService != null
+                && !isBlockCompressionEnabled(size, deflateLevel);
+    }
+
+    private void writeBlocks(String name, boolean isGlobal, Array array, BlockDeflater blocks) throws IOException {
+        Sink blockSink = Sinks.wrapNonSeeking(blocks, 8 * 1024).order(sink.order());
+        Mat5WriteUtil.writeArray(name, isGlobal, array, blockSink);
+        blockSink.close();
+    }
+
+    private boolean isBlockCompressionEnabled(RootSize size, int deflateLevel) {
+        return deflateLevel != Deflater.NO_COMPRESSION
+                && blockSize > 0
+                && BlockDeflater.isSupported()
+                && size.get() >= 2L * blockSize;
     }
 
     private void nextEntryIsSubsystem() throws IOException {
         this.subsysLocation = sink.position();
     }
 
+    private long getIndexPosition() throws IOException {
+        return indexEntries == null && statistics == null ? -1 : sink.position();
+    }
+
+    private void addIndexEntry(long start, String name, boolean isGlobal, Array array, RootSize size, int deflateLevel) throws IOException {
+        addIndexEntry(start, name, isGlobal, array, size, deflateLevel, 0, null);
+    }
+
+    private void addIndexEntry(long start, String name, boolean isGlobal, Array array, RootSize size, BlockDeflater blocks) throws IOException {
+        if (blocks.isIndependent())
+            addIndexEntry(start, name, isGlobal, array, size, blocks.getDeflateLevel(), blocks.getBlockSize(), blocks.getBlockOffsets());
+        else
+            addIndexEntry(start, name, isGlobal, array, size, blocks.getDeflateLevel());
+    }
+
+    private void addIndexEntry(long start, String name, boolean isGlobal, Array array, RootSize size, int deflateLevel,
+                               int blockSize, long[] blockOffsets) throws IOException {
+        if (indexEntries == null && statistics == null)
+            return;
+        boolean compressed = deflateLevel != Deflater.NO_COMPRESSION;
+        int numBytes = Casts.sint32(sink.position() - start - Mat5.MATRIX_TAG_SIZE);
+        long uncompressedSize = compressed ? size.get() : Mat5.MATRIX_TAG_SIZE + numBytes;
+        if (statistics != null)
+            statistics.add(new EntryStatistics(name, deflateLevel, uncompressedSize, Mat5.MATRIX_TAG_SIZE + numBytes));
+        if (indexEntries == null)
+            return;
+        indexEnd = Math.max(indexEnd, sink.position() - fileStart);
+        indexEntries.add(new Mat5Index.Entry(Mat5Index.createHeader(name, isGlobal, array),
+                start - fileStart, numBytes, uncompressedSize, compressed, array instanceof Mat5Subsystem,
+                blockSize, blockOffsets));
+    }
+
     /**
      * Makes sure that all written arrays were written to the sink, and that
      * the (optional) subsystem offset has been set. May be called more than
@@ -215,12 +667,8 @@ public final class Mat5Writer {
      */
     public Mat5Writer flush() throws IOException {
         // Write all entries
-        for (Future<FlushAction> action : flushActions) {
-            try {
-                action.get().run();
-            } catch (Exception e) {
-                throw new IOException(e);
-            }
+        while (!flushActions.isEmpty()) {
+            writeNextAction();
         }
         // Lastly, update subsystem offset in the (non-reduced) header
         if (headerStart >= 0 && subsysLocation > 0) {
@@ -230,6 +678,27 @@ public final class Mat5Writer {
         return this;
     }
 
+    /**
+     * Writes queued entries that are already finished without waiting for the others
+     */
+    private void writeCompletedActions() throws IOException {
+        while (!flushActions.isEmpty() && flushActions.peekFirst().isDone()) {
+            writeNextAction();
+        }
+    }
+
+    /**
+     * Waits for the oldest queued entry and writes it to the sink
+     */
+    private void writeNextAction() throws IOException {
+        Future<FlushAction> action = flushActions.pollFirst();
+        try {
+            action.get().run();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
     private interface FlushAction {
         void run() throws IOException;
     }
@@ -238,13 +707,28 @@ public final class Mat5Writer {
         this.sink = checkNotNull(sink, "Sink can't be empty");
     }
 
+    private static boolean isSeekable(Sink sink) {
+        // Sinks that don't extend AbstractSink had to support seeking before
+        return !(sink instanceof AbstractSink) || ((AbstractSink) sink).isSeekable();
+    }
+
     protected final Sink sink;
     protected int deflateLevel = Deflater.BEST_SPEED;
+    private CompressionPolicy compressionPolicy = null;
+    private List<EntryStatistics> statistics = null;
     private long headerStart = -1;
     private long subsysLocation = 0; // matlab uses zeros for missing subsystems
     private ExecutorService executorService = null;
     private BufferAllocator bufferAllocator = Mat5.getDefaultBufferAllocator();
-    private final List<Future<FlushAction>> flushActions = new ArrayList<Future<FlushAction>>(16);
-    private Deflater deflater = null;
+    private final ArrayDeque<Future<FlushAction>> flushActions = new ArrayDeque<Future<FlushAction>>(16);
+    private MemoryBudget bufferBudget = null;
+    private List<Mat5Index.Entry> indexEntries = null;
+    private int blockSize = 0;
+    private MemoryBudget blockBudget = null;
+    private boolean independentBlocks = false;
+    private static final int MIN_BLOCK_SIZE = 32 * 1024;
+    private String indexDescription = "";
+    private long indexEnd = 0;
+    private long fileStart = 0;
 
 }
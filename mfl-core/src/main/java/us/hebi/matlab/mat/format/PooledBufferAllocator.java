@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.util.Bytes;
+import us.hebi.matlab.mat.util.Unsafe9R;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Buffer allocator that recycles released buffers rather than allocating and freeing
+ * direct memory for every array. Buffers get rounded up to power-of-two size classes,
+ * and released buffers get kept in a small per-thread cache and a shared pool with a
+ * limited number of retained bytes. Buffers that exceed the max pooled size or that
+ * don't fit into the pool get freed immediately.
+ * <p>
+ * Thread caches are limited separately, so the total number of retained bytes is
+ * bounded by the shared pool limit plus the thread cache limit for each thread that
+ * has released buffers. Recycled buffers get zeroed before being handed out, which
+ * is still a lot cheaper than allocating new direct memory. The allocator keeps weak
+ * references to all thread caches, so {@link #clear()} and the statistics include
+ * them, and buffers that are cached by threads that have terminated get freed by the
+ * garbage collector. This class is thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+
+    /**
+     * Creates an allocator for direct buffers that retains up to 64 MB in the shared pool,
+     * caches up to 4 MB per thread, and pools buffers of up to 16 MB.
+     */
+    public PooledBufferAllocator() {
+        this(true, 64 * 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024);
+    }
+
+    /**
+     * @param direct               true to allocate direct buffers, false for heap buffers
+     * @param maxPooledBytes       max number of bytes retained by the shared pool
+     * @param maxThreadCachedBytes max number of bytes retained by each thread's cache
+     * @param maxPooledBufferSize  buffers larger than this size don't get pooled
+     */
+    public PooledBufferAllocator(boolean direct, long maxPooledBytes, long maxThreadCachedBytes, int maxPooledBufferSize) {
+        checkArgument(maxPooledBytes >= 0, "pool size can't be negative");
+        checkArgument(maxThreadCachedBytes >= 0, "cache size can't be negative");
+        checkArgument(maxPooledBufferSize > 0 && maxPooledBufferSize <= MAX_POOLED_BUFFER_SIZE, "invalid max buffer size");
+        this.direct = direct;
+        this.maxPooledBytes = maxPooledBytes;
+        this.maxThreadCachedBytes = maxThreadCachedBytes;
+        this.maxPooledBufferSize = maxPooledBufferSize;
+        this.numClasses = getSizeClass(maxPooledBufferSize) + 1;
+        this.pool = createClasses(numClasses);
+    }
+
+    @Override
+    public ByteBuffer allocate(int numBytes) {
+        checkArgument(numBytes >= 0, "number of bytes can't be negative");
+        if (numBytes > maxPooledBufferSize) {
+            misses.incrementAndGet();
+            return newBuffer(numBytes);
+        }
+
+        // Try the thread cache first, then the shared pool
+        int sizeClass = getSizeClass(numBytes);
+        ByteBuffer buffer = threadCache.get().poll(sizeClass);
+        if (buffer == null) {
+            synchronized (pool) {
+                buffer = pool.get(sizeClass).pollLast();
+                if (buffer != null)
+                    pooledBytes -= buffer.capacity();
+            }
+        }
+
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = newBuffer(getCapacity(sizeClass));
+        } else {
+            hits.incrementAndGet();
+            buffer.clear();
+            zero(buffer, numBytes);
+        }
+
+        buffer.limit(numBytes);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = capacity <= MAX_POOLED_BUFFER_SIZE ? getSizeClass(capacity) : numClasses;
+        if (buffer.isDirect() != direct
+                || buffer.isReadOnly()
+                || sizeClass >= numClasses
+                || capacity != getCapacity(sizeClass)) {
+            free(buffer);
+            return;
+        }
+
+        if (threadCache.get().offer(sizeClass, buffer, maxThreadCachedBytes))
+            return;
+
+        synchronized (pool) {
+            if (pooledBytes + capacity <= maxPooledBytes) {
+                pool.get(sizeClass).addLast(buffer);
+                pooledBytes += capacity;
+                return;
+            }
+        }
+        free(buffer);
+    }
+
+    /**
+     * Frees all buffers in the shared pool and in the caches of all threads
+     */
+    public void clear() {
+        for (ThreadCache cache : getThreadCaches()) {
+            cache.clear();
+        }
+        synchronized (pool) {
+            for (ArrayDeque<ByteBuffer> buffers : pool) {
+                freeAll(buffers);
+            }
+            pooledBytes = 0;
+        }
+    }
+
+    /**
+     * @return number of allocations that were served by a recycled buffer
+     */
+    public long getNumHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of allocations that required a new buffer
+     */
+    public long getNumMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of bytes in the shared pool, not including thread caches
+     */
+    public long getPooledBytes() {
+        synchronized (pool) {
+            return pooledBytes;
+        }
+    }
+
+    /**
+     * @return number of bytes in the caches of all threads that are still alive
+     */
+    public long getThreadCachedBytes() {
+        long numBytes = 0;
+        for (ThreadCache cache : getThreadCaches()) {
+            numBytes += cache.getCachedBytes();
+        }
+        return numBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledBufferAllocator{" +
+                "direct=" + direct +
+                ", hits=" + getNumHits() +
+                ", misses=" + getNumMisses() +
+                ", pooledBytes=" + getPooledBytes() +
+                ", threadCachedBytes=" + getThreadCachedBytes() +
+                '}';
+    }
+
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache(numClasses);
+        synchronized (threadCaches) {
+            // Drop caches of threads that have terminated
+            Iterator<WeakReference<ThreadCache>> it = threadCaches.iterator();
+            while (it.hasNext()) {
+                if (it.next().get() == null)
+                    it.remove();
+            }
+            threadCaches.add(new WeakReference<ThreadCache>(cache));
+        }
+        return cache;
+    }
+
+    private List<ThreadCache> getThreadCaches() {
+        synchronized (threadCaches) {
+            List<ThreadCache> caches = new ArrayList<ThreadCache>(threadCaches.size());
+            for (WeakReference<ThreadCache> reference : threadCaches) {
+                ThreadCache cache = reference.get();
+                if (cache != null)
+                    caches.add(cache);
+            }
+            return caches;
+        }
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (buffer.isDirect())
+            Unsafe9R.invokeCleaner(buffer);
+    }
+
+    private static void freeAll(ArrayDeque<ByteBuffer> buffers) {
+        while (!buffers.isEmpty()) {
+            free(buffers.pollLast());
+        }
+    }
+
+    private static void zero(ByteBuffer buffer, int numBytes) {
+        if (buffer.hasArray()) {
+            Arrays.fill(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + numBytes, (byte) 0);
+            return;
+        }
+        ByteBuffer zeros = ZEROS.duplicate();
+        for (int position = 0; position < numBytes; position += zeros.capacity()) {
+            zeros.clear().limit(Math.min(zeros.capacity(), numBytes - position));
+            buffer.put(zeros);
+        }
+        buffer.clear();
+    }
+
+    private static int getSizeClass(int numBytes) {
+        return Math.max(MIN_SIZE_CLASS, 31 - Integer.numberOfLeadingZeros(Bytes.nextPowerOfTwo(numBytes)));
+    }
+
+    private static int getCapacity(int sizeClass) {
+        return 1 << sizeClass;
+    }
+
+    private static List<ArrayDeque<ByteBuffer>> createClasses(int numClasses) {
+        List<ArrayDeque<ByteBuffer>> classes = new ArrayList<ArrayDeque<ByteBuffer>>(numClasses);
+        for (int i = 0; i < numClasses; i++) {
+            classes.add(new ArrayDeque<ByteBuffer>());
+        }
+        return classes;
+    }
+
+    private final boolean direct;
+    private final long maxPooledBytes;
+    private final long maxThreadCachedBytes;
+    private final int maxPooledBufferSize;
+    private final int numClasses;
+
+    private final List<ArrayDeque<ByteBuffer>> pool;
+    private long pooledBytes = 0;
+    private final List<WeakReference<ThreadCache>> threadCaches = new ArrayList<WeakReference<ThreadCache>>();
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return newThreadCache();
+        }
+    };
+
+    /**
+     * Buffers released by a single thread. Only the owning thread adds and removes buffers, but
+     * other threads may clear the cache or query its size, so access is synchronized. The lock
+     * is uncontended in the common case. The cache is only strongly referenced by its thread.
+     */
+    private static class ThreadCache {
+
+        ThreadCache(int numClasses) {
+            this.classes = createClasses(numClasses);
+        }
+
+        synchronized ByteBuffer poll(int sizeClass) {
+            ByteBuffer buffer = classes.get(sizeClass).pollLast();
+            if (buffer != null)
+                cachedBytes -= buffer.capacity();
+            return buffer;
+        }
+
+        synchronized boolean offer(int sizeClass, ByteBuffer buffer, long maxCachedBytes) {
+            if (cachedBytes + buffer.capacity() > maxCachedBytes)
+                return false;
+            classes.get(sizeClass).addLast(buffer);
+            cachedBytes += buffer.capacity();
+            return true;
+        }
+
+        synchronized void clear() {
+            for (ArrayDeque<ByteBuffer> buffers : classes) {
+                freeAll(buffers);
+            }
+            cachedBytes = 0;
+        }
+
+        synchronized long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        private final List<ArrayDeque<ByteBuffer>> classes;
+        private long cachedBytes = 0;
+
+    }
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final int MIN_SIZE_CLASS = 8; // 256 bytes
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 30;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+
+}
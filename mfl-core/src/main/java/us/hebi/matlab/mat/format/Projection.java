@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Tree of dot separated paths, e.g., "log.sensors.imu.accel", that selects which
+ * parts of a struct hierarchy should be read. The first level matches the names
+ * of root entries, and each subsequent level matches struct or object fields. A
+ * '*' matches any name on its level, and the last element of a path selects the
+ * entire subtree.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+final class Projection {
+
+    static Projection fromPaths(String... paths) {
+        checkArgument(paths.length > 0, "Projection requires at least one path");
+        Projection root = new Projection();
+        for (String path : paths) {
+            checkNotNull(path, "Path can't be empty");
+            String[] names = path.split("\\.", -1);
+            for (String name : names) {
+                checkArgument(!name.isEmpty(), "Path contains empty field name: " + path);
+            }
+            root.add(names, 0);
+        }
+        return root;
+    }
+
+    /**
+     * @param name name of a root entry or field
+     * @return projection for the content of the named element, or null if it is not selected
+     */
+    Projection select(String name) {
+        if (all)
+            return this;
+        Projection exact = children.get(name);
+        Projection wildcard = children.get(WILDCARD);
+        if (exact == null)
+            return wildcard;
+        if (wildcard == null)
+            return exact;
+        return merge(exact, wildcard);
+    }
+
+    /**
+     * @return true if everything below this level should be read
+     */
+    boolean isAll() {
+        return all;
+    }
+
+    private void add(String[] names, int index) {
+        if (all)
+            return;
+        if (index == names.length) {
+            all = true;
+            children.clear();
+            return;
+        }
+        Projection child = children.get(names[index]);
+        if (child == null) {
+            child = new Projection();
+            children.put(names[index], child);
+        }
+        child.add(names, index + 1);
+    }
+
+    private static Projection merge(Projection a, Projection b) {
+        if (a.all)
+            return a;
+        if (b.all)
+            return b;
+        Projection merged = new Projection();
+        merged.children.putAll(a.children);
+        for (Map.Entry<String, Projection> entry : b.children.entrySet()) {
+            Projection existing = merged.children.get(entry.getKey());
+            merged.children.put(entry.getKey(), existing == null ? entry.getValue() : merge(existing, entry.getValue()));
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return all ? "*" : children.toString();
+    }
+
+    private boolean all = false;
+    private final Map<String, Projection> children = new HashMap<String, Projection>();
+    private static final String WILDCARD = "*";
+
+}
@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.types.Array;
+import us.hebi.matlab.mat.util.ZlibPool;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Estimates the compression ratio of each entry by deflating a sample of its serialized
+ * data with the fastest level. Entries that shrink by less than the minimum savings get
+ * stored uncompressed, entries that shrink moderately get compressed with the fastest
+ * level, and entries that compress well get compressed with the high level where the
+ * extra effort pays off the most.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class SamplingCompressionPolicy implements CompressionPolicy {
+
+    /**
+     * Creates a policy with a 64 KB sample that skips compression for savings below 10%
+     * and uses the default compression level for savings above 50%.
+     */
+    public SamplingCompressionPolicy() {
+        this(DEFAULT_SAMPLE_SIZE, 0.1, 0.5, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param sampleSize        number of serialized bytes that get test compressed
+     * @param minSavings        min fraction of saved bytes for compressing an entry at all
+     * @param highLevelSavings  min fraction of saved bytes for using the high level
+     * @param highDeflateLevel  deflate level for entries that compress well
+     */
+    public SamplingCompressionPolicy(int sampleSize, double minSavings, double highLevelSavings, int highDeflateLevel) {
+        checkArgument(sampleSize > 0, "sample size must be positive");
+        checkArgument(minSavings >= 0 && minSavings <= highLevelSavings && highLevelSavings <= 1, "invalid savings thresholds");
+        this.sampleSize = sampleSize;
+        this.minSavings = minSavings;
+        this.highLevelSavings = highLevelSavings;
+        this.highDeflateLevel = highDeflateLevel;
+    }
+
+    @Override
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    @Override
+    public int getDeflateLevel(String name, Array array, ByteBuffer sample) {
+        double savings = 1 - estimateCompressionRatio(sample);
+        if (savings < minSavings)
+            return Deflater.NO_COMPRESSION;
+        if (savings < highLevelSavings)
+            return Deflater.BEST_SPEED;
+        return highDeflateLevel;
+    }
+
+    /**
+     * @param sample uncompressed data
+     * @return ratio of compressed to uncompressed bytes using the fastest deflate level
+     */
+    public static double estimateCompressionRatio(ByteBuffer sample) {
+        int length = sample.remaining();
+        if (length == 0)
+            return 1;
+
+        byte[] input = new byte[length];
+        sample.duplicate().get(input);
+        byte[] output = new byte[Math.min(length, 16 * 1024)];
+        long compressed = 0;
+
+        Deflater deflater = ZlibPool.getDefault().borrowDeflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(output);
+            }
+        } finally {
+            ZlibPool.getDefault().release(deflater);
+        }
+        return (double) compressed / length;
+    }
+
+    private final int sampleSize;
+    private final double minSavings;
+    private final double highLevelSavings;
+    private final int highDeflateLevel;
+
+    private static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+}
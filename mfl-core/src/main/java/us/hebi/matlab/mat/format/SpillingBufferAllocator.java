@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import us.hebi.matlab.mat.util.Unsafe9R;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Buffer allocator for reading files whose content does not fit into memory. Buffers
+ * are allocated in memory until the memory budget is exhausted. Afterwards, large buffers
+ * are backed by memory-mapped temporary files, so that the operating system can page
+ * them out to disk. Arrays use the same access path either way.
+ * <p>
+ * Each spilled buffer gets its own temporary file that is deleted when the buffer gets
+ * released. Closing the allocator deletes all remaining files, after which none of the
+ * spilled buffers may be accessed anymore. This class is thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class SpillingBufferAllocator implements BufferAllocator, Closeable {
+
+    /**
+     * @param maxMemoryBytes number of bytes that can be allocated in memory before spilling to disk
+     */
+    public SpillingBufferAllocator(long maxMemoryBytes) {
+        this(maxMemoryBytes, null);
+    }
+
+    /**
+     * @param maxMemoryBytes number of bytes that can be allocated in memory before spilling to disk
+     * @param folder         folder for temporary files, or null for the default temporary directory
+     */
+    public SpillingBufferAllocator(long maxMemoryBytes, File folder) {
+        checkArgument(maxMemoryBytes >= 0, "memory budget can't be negative");
+        checkArgument(folder == null || folder.isDirectory(), "invalid temp folder: " + folder);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.folder = folder;
+    }
+
+    /**
+     * Sets the min size of buffers that may be spilled. Smaller buffers are always
+     * allocated in memory because a file per buffer would be too expensive. The default
+     * is 64 KB.
+     *
+     * @param minSpillSize min number of bytes of a spilled buffer
+     * @return this
+     */
+    public SpillingBufferAllocator setMinSpillSize(int minSpillSize) {
+        checkArgument(minSpillSize > 0, "spill size must be positive");
+        this.minSpillSize = minSpillSize;
+        return this;
+    }
+
+    @Override
+    public ByteBuffer allocate(int numBytes) {
+        checkArgument(numBytes >= 0, "number of bytes can't be negative");
+        synchronized (this) {
+            checkState(!closed, "Allocator has already been closed");
+            if (numBytes < minSpillSize || memoryBytes + numBytes <= maxMemoryBytes) {
+                memoryBytes += numBytes;
+                return memory.allocate(numBytes);
+            }
+        }
+        return spill(numBytes);
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        File file;
+        synchronized (this) {
+            file = spilledFiles.remove(buffer);
+            if (file == null) {
+                memoryBytes -= buffer.capacity();
+                memory.release(buffer);
+                return;
+            }
+            spilledBytes -= buffer.capacity();
+        }
+        deleteSpilledFile(buffer, file);
+    }
+
+    /**
+     * @return number of bytes that are currently allocated in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return number of bytes that are currently backed by temporary files
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return number of temporary files that have not been released yet
+     */
+    public synchronized int getNumSpilledFiles() {
+        return spilledFiles.size();
+    }
+
+    /**
+     * Deletes all remaining temporary files. Buffers that were allocated in memory
+     * are not affected.
+     */
+    @Override
+    public void close() {
+        Map<ByteBuffer, File> remaining;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            remaining = new IdentityHashMap<ByteBuffer, File>(spilledFiles);
+            spilledFiles.clear();
+            spilledBytes = 0;
+        }
+        for (Map.Entry<ByteBuffer, File> entry : remaining.entrySet()) {
+            deleteSpilledFile(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private ByteBuffer spill(int numBytes) {
+        File file = null;
+        try {
+            file = File.createTempFile("mfl-", ".tmp", folder);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            ByteBuffer buffer;
+            try {
+                // Extended files read as zero. The mapping stays valid after closing the channel.
+                raf.setLength(numBytes);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, numBytes);
+                buffer.order(ByteOrder.nativeOrder());
+            } finally {
+                raf.close();
+            }
+            synchronized (this) {
+                spilledFiles.put(buffer, file);
+                spilledBytes += numBytes;
+            }
+            return buffer;
+        } catch (IOException e) {
+            if (file != null && !file.delete())
+                file.deleteOnExit();
+            throw new IllegalStateException("Failed to create temporary file", e);
+        }
+    }
+
+    private static void deleteSpilledFile(ByteBuffer buffer, File file) {
+        // Files can't be deleted on some platforms while they are still mapped
+        Unsafe9R.invokeCleaner(buffer);
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpillingBufferAllocator{" +
+                "memoryBytes=" + memoryBytes +
+                ", spilledBytes=" + spilledBytes +
+                ", spilledFiles=" + spilledFiles.size() +
+                '}';
+    }
+
+    private final long maxMemoryBytes;
+    private final File folder;
+    private final BufferAllocator memory = Mat5.getDefaultBufferAllocator();
+    private final Map<ByteBuffer, File> spilledFiles = new IdentityHashMap<ByteBuffer, File>();
+    private int minSpillSize = 64 * 1024;
+    private long memoryBytes = 0;
+    private long spilledBytes = 0;
+    private boolean closed = false;
+
+}
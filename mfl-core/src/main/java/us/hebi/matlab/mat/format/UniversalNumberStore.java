@@ -24,6 +24,7 @@ import us.hebi.matlab.mat.types.MatlabType;
 import us.hebi.matlab.mat.types.Sink;
 import us.hebi.matlab.mat.util.Bytes;
 import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.NonOwningBufferAllocator;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -185,7 +186,11 @@ class UniversalNumberStore implements NumberStore {
         // this way we guarantee that the switch happens fully
         // buffered. It's also likely that any subsequent writes
         // use the same output order.
-        if (buffer.order() != sink.order()) {
+        if (buffer.order() != sink.order() && type.bytes() > 1) {
+            if (buffer.isReadOnly() || bufferAllocator instanceof NonOwningBufferAllocator) {
+                writeReversedCopy(sink);
+                return;
+            }
             Bytes.reverseByteOrder(buffer, type.bytes());
         }
 
@@ -195,6 +200,28 @@ class UniversalNumberStore implements NumberStore {
 
     }
 
+    /**
+     * Buffers that share memory with a source can't be reversed in place, so
+     * the data gets written in chunks of temporary copies
+     */
+    private void writeReversedCopy(Sink sink) throws IOException {
+        buffer.rewind();
+        type.writeTag(numElements, sink);
+        ByteBuffer chunk = ByteBuffer.allocate(Math.min(buffer.remaining(), REVERSE_CHUNK_SIZE));
+        ByteBuffer view = buffer.duplicate();
+        while (view.hasRemaining()) {
+            chunk.clear();
+            chunk.order(buffer.order());
+            view.limit(view.position() + Math.min(view.remaining(), chunk.capacity()));
+            chunk.put(view);
+            chunk.flip();
+            Bytes.reverseByteOrder(chunk, type.bytes());
+            sink.writeByteBuffer(chunk);
+            view.limit(buffer.limit());
+        }
+        type.writePadding(numElements, sink);
+    }
+
     ByteBuffer getByteBuffer() {
         buffer.rewind();
         return buffer.slice();
@@ -217,6 +244,7 @@ class UniversalNumberStore implements NumberStore {
     private final int numElements;
     ByteBuffer buffer;
     private BufferAllocator bufferAllocator;
+    private static final int REVERSE_CHUNK_SIZE = 64 * 1024;
 
     static int hashCodeForType(NumberStore store, boolean logical, MatlabType type) {
         if (store == null) {
@@ -252,8 +280,8 @@ class UniversalNumberStore implements NumberStore {
         if (a instanceof UniversalNumberStore && b instanceof UniversalNumberStore) {
             UniversalNumberStore aCast = (UniversalNumberStore) a;
             UniversalNumberStore bCast = (UniversalNumberStore) b;
-            if (aCast.type == bCast.type) {
-                // when their types are equal, then their binary content must be exactly the same (much faster)
+            if (aCast.type == bCast.type && aCast.buffer.order() == bCast.buffer.order()) {
+                // when their types and byte orders are equal, then their binary content must be exactly the same (much faster)
                 return aCast.buffer.equals(bCast.buffer);
             }
         }
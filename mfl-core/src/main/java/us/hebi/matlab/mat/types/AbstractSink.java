@@ -186,6 +186,17 @@ public abstract class AbstractSink implements Sink {
         }
     }
 
+    /**
+     * Checks whether {@link Sink#position(long)} is supported. Writers
+     * buffer compressed entries for sinks that can't seek. Sinks that
+     * don't extend this class are assumed to be seekable.
+     *
+     * @return true if the position can be changed
+     */
+    public boolean isSeekable() {
+        return true;
+    }
+
     @Override
     public Sink writeDeflated(Deflater deflater) {
         DeflaterOutputStream deflateStream = new DeflaterOutputStream(streamWrapper, deflater, bytes.length);
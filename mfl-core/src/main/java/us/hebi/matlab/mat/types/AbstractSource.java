@@ -28,8 +28,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import static us.hebi.matlab.mat.util.Bytes.*;
 
@@ -175,8 +173,60 @@ public abstract class AbstractSource implements Source {
     @Override
     public Source readInflated(int numBytes, int inflateBufferSize) throws IOException {
         InputStream subInputStream = readBytesAsStream(numBytes);
-        InputStream inflaterInput = new InflaterInputStream(subInputStream, new Inflater(), inflateBufferSize);
-        return Sources.wrapInputStream(inflaterInput, bytes.length).order(order());
+        return Sources.wrapInflater(subInputStream, inflateBufferSize, bytes.length).order(order());
+    }
+
+    /**
+     * Checks whether this source can create independent views on arbitrary sections of the
+     * underlying data via {@link #slice(long, long)}, e.g., buffers or memory mapped files.
+     * Sources that don't extend this class are read sequentially.
+     *
+     * @return true if slicing is supported
+     */
+    public boolean isRandomAccess() {
+        return false;
+    }
+
+    /**
+     * Creates a new source that reads the specified section of the underlying data. The position is
+     * given in the same coordinates as {@link Source#getPosition()}, and the returned source starts
+     * at position zero. Creating or reading the slice does not change the position of this source, so
+     * slices may be read concurrently by different threads.
+     * <p>
+     * Note that closing the returned source does not close the parent source, but the parent source
+     * needs to remain open for as long as the slice is in use.
+     *
+     * @param position position of the first byte
+     * @param numBytes number of bytes in the slice
+     * @return independent child source with the same byte order
+     * @throws IOException if the section is out of bounds
+     * @throws IllegalStateException if this source does not support random access
+     */
+    public Source slice(long position, long numBytes) throws IOException {
+        throw new IllegalStateException("Source does not support random access");
+    }
+
+    /**
+     * Returns a read-only view on the next numBytes of the underlying data and moves the position
+     * forward by the same amount, so that the data can be used without being copied. The view shares
+     * memory with this source, so this source needs to remain open for as long as the view is in use.
+     *
+     * @param numBytes number of bytes in the view
+     * @return read-only view with the byte order of this source, or null if the data can't be shared
+     * @throws IOException if there are fewer than numBytes remaining
+     */
+    public ByteBuffer readBufferView(int numBytes) throws IOException {
+        return null;
+    }
+
+    /**
+     * Hints that the next numBytes are about to be read. Memory-mapped files that were opened with
+     * {@link MappingPolicy#TOUCH_AHEAD} load the corresponding pages into memory. All other sources
+     * ignore the hint. The position does not change.
+     *
+     * @param numBytes number of bytes that are about to be read
+     */
+    public void prefetch(long numBytes) {
     }
 
     /**
@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.types;
+
+/**
+ * Determines when the pages of a memory-mapped file get loaded into physical memory
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public enum MappingPolicy {
+
+    /**
+     * Loads the entire file when it gets opened. This is the fastest option for
+     * reading all of a file that is not in the page cache yet.
+     */
+    EAGER,
+
+    /**
+     * Leaves it to the operating system to load pages on first access. This is
+     * the fastest option for accessing only a few variables of a large file.
+     */
+    LAZY,
+
+    /**
+     * Loads the pages of each root entry right before the reader starts parsing
+     * it, so that only the entries that actually get read are loaded.
+     *
+     * @see AbstractSource#prefetch(long)
+     */
+    TOUCH_AHEAD
+
+}
@@ -29,6 +29,7 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 import static us.hebi.matlab.mat.util.Preconditions.*;
@@ -149,15 +150,31 @@ public class Sinks {
      * @throws IOException if file can't be opened
      */
     public static Sink newMappedFile(File file, int maxExpectedSize) throws IOException {
+        return newMappedFile(file, maxExpectedSize, MappingPolicy.EAGER);
+    }
+
+    /**
+     * Same as {@link #newMappedFile(File, int)}, but with a policy for loading the pages of the
+     * mapping. Pages of a new file don't contain any data yet, so {@link MappingPolicy#LAZY} avoids
+     * faulting in the entire expected size upfront. {@link MappingPolicy#TOUCH_AHEAD} behaves like lazy.
+     *
+     * @param file            target file
+     * @param maxExpectedSize initial size of the file
+     * @param policy          when to load the pages of the mapping
+     * @return sink writing to file
+     * @throws IOException if file can't be opened
+     */
+    public static Sink newMappedFile(File file, int maxExpectedSize, MappingPolicy policy) throws IOException {
         checkOutputNotNull(file);
+        checkNotNull(policy, "policy can't be empty");
         deleteFileIfExists(file);
         createParentDirs(file);
 
         // Memory map largest possible size
         final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
-        final ByteBuffer buffer = channel
-                .map(FileChannel.MapMode.READ_WRITE, 0, maxExpectedSize)
-                .load();
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxExpectedSize);
+        if (policy == MappingPolicy.EAGER)
+            buffer.load();
         buffer.order(ByteOrder.nativeOrder());
 
         // Unmap buffer and truncate file to actual size
@@ -191,6 +208,10 @@ public class Sinks {
     /**
      * Wraps an existing output stream. This does not support position seeking, which
      * may prohibit some functionality. Used internally for creating deflated sub-sinks.
+     * <p>
+     * Writers buffer compressed entries until their size is known, so MAT files can be
+     * streamed into pipes or network connections. Updating the subsystem offset in the
+     * file header does require seeking though.
      *
      * @param outputStream outputStream
      * @return sink writing to the output stream
@@ -231,6 +252,11 @@ public class Sinks {
             throw new IllegalStateException("Sink does not implement position seeking");
         }
 
+        @Override
+        public boolean isSeekable() {
+            return false;
+        }
+
         @Override
         public void writeBytes(byte[] buffer, int offset, int length) throws IOException {
             output.write(buffer, offset, length);
@@ -20,15 +20,27 @@
 
 package us.hebi.matlab.mat.types;
 
+import us.hebi.matlab.mat.util.Casts;
+import us.hebi.matlab.mat.util.Inflater11R;
 import us.hebi.matlab.mat.util.Unsafe9R;
+import us.hebi.matlab.mat.util.ZlibPool;
 
 import java.io.*;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 import static us.hebi.matlab.mat.types.Sinks.*;
+import static us.hebi.matlab.mat.util.Bytes.*;
 import static us.hebi.matlab.mat.util.Preconditions.*;
 
 /**
@@ -43,25 +55,49 @@ public class Sources {
         return openFile(new File((checkInputNotNull(file))));
     }
 
+    /**
+     * Memory maps a file for reading. Files up to 2 GB get loaded into memory upfront
+     * ({@link MappingPolicy#EAGER}), and larger files get loaded on access ({@link MappingPolicy#LAZY}).
+     *
+     * @param file input file
+     * @return source reading from the mapped file
+     * @throws IOException if the file can't be mapped
+     */
     public static Source openFile(File file) throws IOException {
         checkFileExists(file);
+        return openFile(file, file.length() > Integer.MAX_VALUE ? MappingPolicy.LAZY : MappingPolicy.EAGER);
+    }
+
+    /**
+     * Memory maps a file for reading using the specified policy for loading pages. Opening a
+     * large file eagerly loads the entire file before the first byte gets parsed, which is
+     * wasteful if only a few variables are needed.
+     *
+     * @param file   input file
+     * @param policy when to load the pages of the mapped file
+     * @return source reading from the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    public static Source openFile(File file, MappingPolicy policy) throws IOException {
+        checkFileExists(file);
+        checkNotNull(policy, "policy can't be empty");
 
-        // File is larger than the max capacity (2 GB) of a buffer, so we use an InputStream instead.
-        // Unfortunately, this limits us to read a very large file using a single thread :( At some point
-        // we could build more complex logic that can map to more than a single buffer.
+        // File is larger than the max capacity (2 GB) of a buffer, so we map it as a series of
+        // overlapping segments. Child sources remain independent, so the inflation of compressed
+        // entries can still be done concurrently.
         if (file.length() > Integer.MAX_VALUE) {
-            return openStreamingFile(file);
+            return openMappedFile(file, DEFAULT_SEGMENT_SIZE, false, policy);
         }
 
         // File is small enough to be memory-mapped into a single buffer
         final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
-        final ByteBuffer buffer = channel
-                .map(FileChannel.MapMode.READ_ONLY, 0, (int) channel.size())
-                .load();
+        final MappedByteBuffer buffer = mapOrClose(channel, FileChannel.MapMode.READ_ONLY);
+        if (policy == MappingPolicy.EAGER)
+            buffer.load();
         buffer.order(ByteOrder.nativeOrder());
 
         // Wrap as source
-        return new ByteBufferSource(buffer, 512) {
+        return new ByteBufferSource(buffer, MAPPED_FILE_BUFFER_SIZE, false, policy == MappingPolicy.TOUCH_AHEAD) {
             @Override
             public void close() throws IOException {
                 super.close();
@@ -72,10 +108,107 @@ public class Sources {
 
     }
 
+    /**
+     * Memory maps a file with read and write access. Views returned by {@link AbstractSource#readBufferView(int)}
+     * write through to the mapping, which lets arrays that share memory with the source update the
+     * file in place. Modifications get written to disk when the source gets closed.
+     *
+     * @param file input file
+     * @return source reading from the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    public static Source openFileForUpdate(File file) throws IOException {
+        checkFileExists(file);
+        if (file.length() > Integer.MAX_VALUE) {
+            return openMappedFile(file, DEFAULT_SEGMENT_SIZE, true);
+        }
+
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        final MappedByteBuffer mapping = mapOrClose(channel, FileChannel.MapMode.READ_WRITE);
+        mapping.order(ByteOrder.nativeOrder());
+        return new ByteBufferSource(mapping, MAPPED_FILE_BUFFER_SIZE, true, false) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                mapping.force();
+                Unsafe9R.invokeCleaner(mapping);
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Memory maps a file of arbitrary size as a sequence of overlapping segments. The
+     * overlap guarantees that primitive values never straddle a segment boundary, and
+     * bulk reads as well as child sources transparently cross boundaries as needed.
+     *
+     * @param file        input file
+     * @param segmentSize max number of bytes mapped by a single segment
+     * @return source reading from the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    static Source openMappedFile(File file, int segmentSize) throws IOException {
+        return openMappedFile(file, segmentSize, false);
+    }
+
+    static Source openMappedFile(File file, int segmentSize, boolean writable) throws IOException {
+        return openMappedFile(file, segmentSize, writable, MappingPolicy.LAZY);
+    }
+
+    static Source openMappedFile(File file, int segmentSize, boolean writable, MappingPolicy policy) throws IOException {
+        checkFileExists(file);
+        checkArgument(segmentSize > 2 * SEGMENT_OVERLAP, "segment size is too small");
+        FileChannel channel = new RandomAccessFile(file, writable ? "rw" : "r").getChannel();
+        try {
+            return new MappedFileSource(channel, segmentSize, MAPPED_FILE_BUFFER_SIZE, writable, policy);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            channel.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Maps the entire file into a single buffer. The channel gets closed if
+     * the mapping fails, e.g., because the address space is exhausted.
+     */
+    private static MappedByteBuffer mapOrClose(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        try {
+            return channel.map(mode, 0, (int) channel.size());
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            channel.close();
+            throw re;
+        }
+    }
+
     public static Source openStreamingFile(File file) throws IOException {
         return new BufferedFileSource(checkFileExists(file));
     }
 
+    /**
+     * Opens a file for sequential reading with a dedicated background thread that reads ahead
+     * of the consumer, so that disk access overlaps with parsing and dispatching work. The data
+     * that has been read ahead is held in a fixed set of direct buffers whose combined size is
+     * limited to the specified number of bytes. The reading thread stops when the buffers are
+     * full, and it finishes when the end of the file is reached or the source gets closed.
+     *
+     * @param file              input file
+     * @param maxReadAheadBytes max number of bytes held in read-ahead buffers
+     * @return sequential source
+     * @throws IOException if the file can't be opened
+     */
+    public static Source openReadAheadFile(File file, long maxReadAheadBytes) throws IOException {
+        checkArgument(maxReadAheadBytes >= 2 * MIN_READ_AHEAD_CHUNK_SIZE, "read-ahead limit is too small");
+        int chunkSize = (int) Math.min(READ_AHEAD_CHUNK_SIZE, maxReadAheadBytes / 2);
+        int numChunks = (int) Math.min(maxReadAheadBytes / chunkSize, MAX_READ_AHEAD_CHUNKS);
+        return new ReadAheadFileSource(checkFileExists(file), chunkSize, numChunks);
+    }
+
     public static Source wrap(byte[] bytes) {
         return wrap(ByteBuffer.wrap(checkInputNotNull(bytes)));
     }
@@ -92,6 +225,17 @@ public class Sources {
         return new InputStreamSource(checkInputNotNull(inputStream), bufferSize);
     }
 
+    /**
+     * @param compressed      stream of deflated data. Gets closed when the returned source gets closed.
+     * @param inputBufferSize number of compressed bytes that get read from the stream at once
+     * @param bufferSize      size of the internal copy buffer
+     * @return source that inflates the compressed data
+     */
+    static Source wrapInflater(InputStream compressed, int inputBufferSize, int bufferSize) {
+        return new InflaterSource(checkInputNotNull(compressed), ZlibPool.getDefault().borrowInflater(),
+                inputBufferSize, bufferSize);
+    }
+
     private static <T> T checkInputNotNull(T input) {
         if (input == null)
             throw new NullPointerException("input must not be null");
@@ -111,7 +255,7 @@ public class Sources {
     private static class BufferedFileSource extends AbstractSource {
         protected BufferedFileSource(File file) throws IOException {
             super(512);
-            this.fileChannel = new RandomAccessFile(file, "rw").getChannel();
+            this.fileChannel = new RandomAccessFile(file, "r").getChannel();
             this.directBuffer.limit(0); // don't pre-fetch data yet
         }
 
@@ -146,14 +290,17 @@ public class Sources {
                 directBuffer.limit(oldLimit);
             }
 
-            // (3) Copy directly in case more data is needed
+            // (3) Copy directly in case more data is needed. Large reads may
+            // get split up by the OS, so we need to keep reading until done.
             if (buffer.hasRemaining()) {
                 checkState(!directBuffer.hasRemaining(), "Read buffer was not fully emptied");
 
-                int numBytes = fileChannel.read(buffer);
-                fileChannelPosition += Math.max(0, numBytes);
-                if (buffer.hasRemaining())
-                    throw new EOFException();
+                while (buffer.hasRemaining()) {
+                    int numBytes = fileChannel.read(buffer);
+                    if (numBytes < 0)
+                        throw new EOFException();
+                    fileChannelPosition += numBytes;
+                }
             }
 
         }
@@ -180,6 +327,22 @@ public class Sources {
             }
         }
 
+        @Override
+        public void skip(long numBytes) throws IOException {
+            if (numBytes <= directBuffer.remaining()) {
+                directBuffer.position(directBuffer.position() + (int) numBytes);
+                return;
+            }
+
+            // Seek rather than read through data that is not needed
+            long target = getPosition() + numBytes;
+            if (target > fileChannel.size())
+                throw new EOFException();
+            fileChannel.position(target);
+            fileChannelPosition = target;
+            directBuffer.limit(0);
+        }
+
         @Override
         public boolean isMutatedByChildren() {
             return true;
@@ -197,11 +360,184 @@ public class Sources {
 
     }
 
+    /**
+     * Sequential file source in which a producer thread reads chunks ahead of the consumer. Chunks
+     * cycle between a queue of free buffers and a queue of filled buffers, so the memory is bounded
+     * by the number of chunks. The end of the file or a failure is signaled by an empty chunk.
+     */
+    private static class ReadAheadFileSource extends AbstractSource {
+
+        ReadAheadFileSource(File file, int chunkSize, int numChunks) throws IOException {
+            super(512);
+            this.fileChannel = new RandomAccessFile(file, "r").getChannel();
+            this.chunks = new ArrayList<ByteBuffer>(numChunks);
+            for (int i = 0; i < numChunks; i++) {
+                ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+                chunks.add(chunk);
+                free.add(chunk);
+            }
+            this.producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readAhead();
+                }
+            }, "mfl-read-ahead");
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        private void readAhead() {
+            try {
+                while (true) {
+                    ByteBuffer chunk = free.take();
+                    chunk.clear();
+                    while (chunk.hasRemaining() && fileChannel.read(chunk) >= 0) {
+                    }
+                    chunk.flip();
+                    if (chunk.hasRemaining())
+                        filled.put(chunk);
+                    if (chunk.limit() < chunk.capacity())
+                        break; // end of file
+                }
+            } catch (InterruptedException ie) {
+                // closed
+            } catch (IOException ioe) {
+                error = ioe;
+            } finally {
+                filled.add(END_OF_DATA);
+            }
+        }
+
+        /**
+         * @return the next chunk with remaining data, or null if the end has been reached
+         */
+        private ByteBuffer nextChunk() throws IOException {
+            if (chunk != null && chunk.hasRemaining())
+                return chunk;
+            if (chunk == END_OF_DATA)
+                return null;
+            if (chunk != null)
+                free.add(chunk);
+            try {
+                chunk = filled.take();
+            } catch (InterruptedException ie) {
+                chunk = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+            if (chunk == END_OF_DATA) {
+                if (error != null)
+                    throw new IOException("Failed to read ahead", error);
+                return null;
+            }
+            return chunk;
+        }
+
+        @Override
+        protected InputStream readBytesAsStream(long numBytes) throws IOException {
+            return new SourceInputStream(this, numBytes);
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void readByteBuffer(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                ByteBuffer chunk = nextChunk();
+                if (chunk == null)
+                    throw new EOFException();
+
+                // Lower limit to max what fits inside the buffer to prevent overflow
+                int n = Math.min(chunk.remaining(), buffer.remaining());
+                int oldLimit = chunk.limit();
+                chunk.limit(chunk.position() + n);
+                buffer.put(chunk);
+                chunk.limit(oldLimit);
+                position += n;
+            }
+        }
+
+        @Override
+        public void readBytes(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                ByteBuffer chunk = nextChunk();
+                if (chunk == null)
+                    throw new EOFException();
+                int n = Math.min(chunk.remaining(), length);
+                chunk.get(buffer, offset, n);
+                position += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void skip(long numBytes) throws IOException {
+            while (numBytes > 0) {
+                ByteBuffer chunk = nextChunk();
+                if (chunk == null)
+                    throw new EOFException();
+                int n = (int) Math.min(chunk.remaining(), numBytes);
+                chunk.position(chunk.position() + n);
+                position += n;
+                numBytes -= n;
+            }
+        }
+
+        @Override
+        public boolean isMutatedByChildren() {
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The producer may still be writing into a chunk, so it needs to stop before the memory gets freed
+            producer.interrupt();
+            boolean interrupted = false;
+            while (producer.isAlive()) {
+                try {
+                    producer.join();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            for (ByteBuffer chunk : chunks) {
+                Unsafe9R.invokeCleaner(chunk);
+            }
+            chunks.clear();
+            chunk = END_OF_DATA;
+            fileChannel.close();
+        }
+
+        private final FileChannel fileChannel;
+        private final List<ByteBuffer> chunks;
+        private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<ByteBuffer>();
+        private final BlockingQueue<ByteBuffer> filled = new LinkedBlockingQueue<ByteBuffer>();
+        private final Thread producer;
+        private volatile IOException error = null;
+        private ByteBuffer chunk = null;
+        private long position = 0;
+
+        private static final ByteBuffer END_OF_DATA = ByteBuffer.allocate(0);
+
+    }
+
     private static class ByteBufferSource extends AbstractSource {
 
         private ByteBufferSource(ByteBuffer buffer, int bufferSize) {
+            this(buffer, bufferSize, false, false);
+        }
+
+        private ByteBufferSource(ByteBuffer buffer, int bufferSize, boolean writableViews, boolean touchAhead) {
             super(bufferSize);
             this.buffer = buffer;
+            this.writableViews = writableViews;
+            this.touchAhead = touchAhead;
         }
 
         @Override
@@ -293,6 +629,31 @@ public class Sources {
             return false;
         }
 
+        @Override
+        public boolean isRandomAccess() {
+            return true;
+        }
+
+        @Override
+        public Source slice(long position, long numBytes) throws IOException {
+            if (position < 0 || numBytes < 0 || position + numBytes > buffer.limit())
+                throw new EOFException();
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit((int) (position + numBytes));
+            slice.position((int) position);
+            return new ByteBufferSource(slice.slice(), 128, writableViews, touchAhead).order(order());
+        }
+
+        @Override
+        public ByteBuffer readBufferView(int numBytes) throws IOException {
+            if (numBytes < 0 || numBytes > buffer.remaining())
+                throw new EOFException();
+            ByteBuffer view = writableViews ? buffer.duplicate() : buffer.asReadOnlyBuffer();
+            view.limit(buffer.position() + numBytes);
+            buffer.position(buffer.position() + numBytes);
+            return view.slice().order(order());
+        }
+
         @Override
         public void readByteBuffer(ByteBuffer dst) throws IOException {
             if (dst.remaining() > buffer.remaining())
@@ -320,7 +681,347 @@ public class Sources {
             return buffer.position();
         }
 
+        @Override
+        public void skip(long numBytes) throws IOException {
+            // Move the position rather than copying, so skipped pages of mapped files don't get loaded
+            if (numBytes > buffer.remaining())
+                throw new EOFException();
+            if (numBytes > 0)
+                buffer.position(buffer.position() + (int) numBytes);
+        }
+
+        @Override
+        public void prefetch(long numBytes) {
+            if (touchAhead) {
+                int position = buffer.position();
+                int end = (int) Math.min(buffer.limit(), position + numBytes);
+                int checksum = 0;
+                for (int i = position; i < end; i += PAGE_SIZE) {
+                    checksum += buffer.get(i);
+                }
+                touchedChecksum = checksum;
+            }
+        }
+
         final ByteBuffer buffer;
+        final boolean writableViews;
+        final boolean touchAhead;
+
+    }
+
+    /**
+     * Maps a file that may be larger than the 2 GB limit of a single buffer. Segment i
+     * covers [i * step, i * step + segmentSize) with step = segmentSize - overlap, so any
+     * position can be read as a primitive from the segment that it falls into.
+     * <p>
+     * Slices that span more than one segment are represented by a view that shares the
+     * mapping, but that owns duplicates of the segments within its range.
+     */
+    private static class MappedFileSource extends AbstractSource {
+
+        MappedFileSource(FileChannel channel, int segmentSize, int bufferSize, boolean writable, MappingPolicy policy) throws IOException {
+            this(channel, mapSegments(channel, segmentSize, writable, policy == MappingPolicy.EAGER), segmentSize - SEGMENT_OVERLAP,
+                    0, channel.size(), bufferSize, writable, policy == MappingPolicy.TOUCH_AHEAD);
+            order(ByteOrder.nativeOrder());
+        }
+
+        private MappedFileSource(FileChannel channel, ByteBuffer[] segments, long step, long start, long end, int bufferSize, boolean writable, boolean touchAhead) {
+            super(bufferSize);
+            this.writable = writable;
+            this.touchAhead = touchAhead;
+            this.channel = channel;
+            this.segments = segments;
+            this.step = step;
+            this.start = start;
+            this.end = end;
+            this.position = start;
+            this.bufferSize = bufferSize;
+        }
+
+        private static ByteBuffer[] mapSegments(FileChannel channel, int segmentSize, boolean writable, boolean load) throws IOException {
+            // Map all segments up front so that children never need to touch the channel
+            final long size = channel.size();
+            final long step = segmentSize - SEGMENT_OVERLAP;
+            long numSegments = size <= segmentSize ? 1 : (size - segmentSize + step - 1) / step + 1;
+            ByteBuffer[] segments = new ByteBuffer[Casts.sint32(numSegments)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * step;
+                long length = Math.min(segmentSize, size - start);
+                MappedByteBuffer segment = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, start, length);
+                segments[i] = load ? segment.load() : segment;
+            }
+            return segments;
+        }
+
+        @Override
+        public AbstractSource order(ByteOrder byteOrder) {
+            super.order(byteOrder);
+            for (ByteBuffer segment : segments) {
+                if (segment != null)
+                    segment.order(byteOrder);
+            }
+            return this;
+        }
+
+        @Override
+        public long getPosition() {
+            return position - start;
+        }
+
+        private int getSegmentIndex(long position) {
+            return (int) Math.min(position / step, segments.length - 1);
+        }
+
+        private ByteBuffer getSegment(int numBytes) throws IOException {
+            if (numBytes > end - position)
+                throw new EOFException();
+            return segments[getSegmentIndex(position)];
+        }
+
+        @Override
+        public void prefetch(long numBytes) {
+            if (touchAhead) {
+                long last = Math.min(end, position + numBytes);
+                int checksum = 0;
+                for (long pos = position; pos < last; pos += PAGE_SIZE) {
+                    int index = getSegmentIndex(pos);
+                    checksum += segments[index].get((int) (pos - index * step));
+                }
+                touchedChecksum = checksum;
+            }
+        }
+
+        private int getSegmentOffset() {
+            return (int) (position - getSegmentIndex(position) * step);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            byte value = getSegment(SIZEOF_BYTE).get(getSegmentOffset());
+            position += SIZEOF_BYTE;
+            return value;
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            short value = getSegment(SIZEOF_SHORT).getShort(getSegmentOffset());
+            position += SIZEOF_SHORT;
+            return value;
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            int value = getSegment(SIZEOF_INT).getInt(getSegmentOffset());
+            position += SIZEOF_INT;
+            return value;
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            long value = getSegment(SIZEOF_LONG).getLong(getSegmentOffset());
+            position += SIZEOF_LONG;
+            return value;
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            float value = getSegment(SIZEOF_FLOAT).getFloat(getSegmentOffset());
+            position += SIZEOF_FLOAT;
+            return value;
+        }
+
+        @Override
+        public double readDouble() throws IOException {
+            double value = getSegment(SIZEOF_DOUBLE).getDouble(getSegmentOffset());
+            position += SIZEOF_DOUBLE;
+            return value;
+        }
+
+        @Override
+        public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+            if (length > end - position)
+                throw new EOFException();
+            while (length > 0) {
+                ByteBuffer segment = segments[getSegmentIndex(position)];
+                segment.position(getSegmentOffset());
+                int n = Math.min(length, segment.remaining());
+                segment.get(bytes, offset, n);
+                position += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void readByteBuffer(ByteBuffer dst) throws IOException {
+            if (dst.remaining() > end - position)
+                throw new EOFException();
+            while (dst.hasRemaining()) {
+                ByteBuffer segment = segments[getSegmentIndex(position)];
+                segment.position(getSegmentOffset());
+                int n = Math.min(dst.remaining(), segment.remaining());
+
+                // Set dummy limit as there is no bb.get(bb) method
+                segment.limit(segment.position() + n);
+                dst.put(segment);
+                segment.limit(segment.capacity());
+                position += n;
+            }
+        }
+
+        @Override
+        public void skip(long numBytes) throws IOException {
+            if (numBytes > end - position)
+                throw new EOFException();
+            position += numBytes;
+        }
+
+        @Override
+        protected InputStream readBytesAsStream(long numBytes) throws IOException {
+            if (numBytes > end - position)
+                throw new EOFException();
+            InputStream stream = new SegmentInputStream(position, position + numBytes);
+            position += numBytes;
+            return stream;
+        }
+
+        @Override
+        public boolean isMutatedByChildren() {
+            return false;
+        }
+
+        @Override
+        public boolean isRandomAccess() {
+            return true;
+        }
+
+        @Override
+        public Source slice(long position, long numBytes) throws IOException {
+            final long first = start + position;
+            final long last = first + numBytes;
+            if (position < 0 || numBytes < 0 || last > end)
+                throw new EOFException();
+
+            // Sections that fit into a single segment can be served by a simple buffer
+            final int index = getSegmentIndex(first);
+            final int offset = (int) (first - index * step);
+            if (offset + numBytes <= segments[index].capacity()) {
+                ByteBuffer slice = segments[index].duplicate();
+                slice.limit((int) (offset + numBytes));
+                slice.position(offset);
+                return new ByteBufferSource(slice.slice(), 128, writable, touchAhead).order(order());
+            }
+
+            // Larger sections need a view that spans multiple segments
+            ByteBuffer[] views = new ByteBuffer[segments.length];
+            for (int i = index; i <= getSegmentIndex(last - 1); i++) {
+                views[i] = segments[i].duplicate();
+            }
+            return new MappedFileSource(null, views, step, first, last, bufferSize, writable, touchAhead).order(order());
+        }
+
+        @Override
+        public ByteBuffer readBufferView(int numBytes) throws IOException {
+            if (numBytes < 0 || numBytes > end - position)
+                throw new EOFException();
+
+            // Sections that span multiple segments get a dedicated mapping that is owned by the root source.
+            // Views of child sources don't have access to the channel.
+            final int index = getSegmentIndex(position);
+            final int offset = getSegmentOffset();
+            if (offset + numBytes > segments[index].capacity()) {
+                if (channel == null)
+                    return null;
+                MappedByteBuffer region = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, position, numBytes);
+                regions.add(region);
+                position += numBytes;
+                return region.order(order());
+            }
+
+            ByteBuffer view = writable ? segments[index].duplicate() : segments[index].asReadOnlyBuffer();
+            view.limit(offset + numBytes);
+            view.position(offset);
+            position += numBytes;
+            return view.slice().order(order());
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Views share the mapping of the parent
+            if (channel == null)
+                return;
+            for (ByteBuffer segment : segments) {
+                if (writable)
+                    ((MappedByteBuffer) segment).force();
+                Unsafe9R.invokeCleaner(segment);
+            }
+            for (MappedByteBuffer region : regions) {
+                if (writable)
+                    region.force();
+                Unsafe9R.invokeCleaner(region);
+            }
+            regions.clear();
+            channel.close();
+        }
+
+        /**
+         * Reads a range that may span multiple segments. Each segment gets accessed through
+         * its own read-only view, so the stream can be consumed by a different thread.
+         */
+        private class SegmentInputStream extends InputStream {
+
+            SegmentInputStream(long start, long end) {
+                this.position = start;
+                this.end = end;
+
+                // Create the views on the owning thread. The reading thread modifies the position and
+                // limit of the shared segments, so views created later could inherit a shortened limit.
+                this.views = new ByteBuffer[segments.length];
+                if (end > start) {
+                    for (int i = getSegmentIndex(start); i <= getSegmentIndex(end - 1); i++) {
+                        views[i] = segments[i].asReadOnlyBuffer();
+                        views[i].clear();
+                    }
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] tmp = new byte[1];
+                return read(tmp, 0, 1) < 0 ? -1 : tmp[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= end)
+                    return -1;
+
+                int index = getSegmentIndex(position);
+                ByteBuffer view = views[index];
+                view.position((int) (position - index * step));
+
+                len = (int) Math.min(Math.min(len, view.remaining()), end - position);
+                view.get(b, off, len);
+                position += len;
+                return len;
+            }
+
+            private long position;
+            private final long end;
+            private final ByteBuffer[] views;
+
+        }
+
+        private final FileChannel channel;
+        private final ByteBuffer[] segments;
+        private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+        private final boolean writable;
+        private final boolean touchAhead;
+        private final long step;
+        private final long start;
+        private final long end;
+        private final int bufferSize;
+        private long position;
 
     }
 
@@ -400,6 +1101,108 @@ public class Sources {
 
     }
 
+    /**
+     * Inflates data directly into the destination arrays without an intermediate
+     * stream. On Java 11+ large direct buffers get inflated into directly as well.
+     */
+    private static class InflaterSource extends AbstractSource {
+
+        InflaterSource(InputStream input, Inflater inflater, int inputBufferSize, int bufferSize) {
+            super(bufferSize);
+            this.input = input;
+            this.inflater = inflater;
+            this.inputBuffer = new byte[Math.max(inputBufferSize, 64)];
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+            int n = 0;
+            try {
+                while (n < length) {
+                    int count = inflater.inflate(bytes, offset + n, length - n);
+                    if (count == 0)
+                        fillInput(n, length);
+                    n += count;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            position += length;
+        }
+
+        @Override
+        public void readByteBuffer(ByteBuffer buffer) throws IOException {
+            // Heap buffers already get inflated into directly
+            if (buffer.hasArray() || buffer.remaining() < MIN_DIRECT_INFLATE_SIZE || !Inflater11R.isAvailable()) {
+                super.readByteBuffer(buffer);
+                return;
+            }
+
+            final int length = buffer.remaining();
+            try {
+                while (buffer.hasRemaining()) {
+                    if (Inflater11R.inflate(inflater, buffer) == 0)
+                        fillInput(length - buffer.remaining(), length);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            position += length;
+        }
+
+        private void fillInput(int n, int length) throws IOException {
+            if (inflater.finished() || inflater.needsDictionary()) {
+                String format = "Reached end of stream after reading %d bytes. Expected %d bytes.";
+                throw new EOFException(String.format(format, n, length));
+            }
+            if (inflater.needsInput()) {
+                int count = input.read(inputBuffer, 0, inputBuffer.length);
+                if (count < 0)
+                    throw new EOFException("Unexpected end of compressed data");
+                inflater.setInput(inputBuffer, 0, count);
+            }
+        }
+
+        @Override
+        public boolean isMutatedByChildren() {
+            return true;
+        }
+
+        @Override
+        protected InputStream readBytesAsStream(long numBytes) {
+            return new SourceInputStream(this, numBytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Hand the inflater back right away rather than relying on finalization. This
+            // also aborts inflation if the caller did not need to read everything.
+            if (closed)
+                return;
+            closed = true;
+            try {
+                input.close();
+            } finally {
+                ZlibPool.getDefault().release(inflater);
+            }
+        }
+
+        long position = 0;
+        boolean closed = false;
+        final InputStream input;
+        final Inflater inflater;
+        final byte[] inputBuffer;
+
+        // Reflective calls only pay off for larger reads
+        private static final int MIN_DIRECT_INFLATE_SIZE = 4096;
+
+    }
+
     private static class SourceInputStream extends InputStream {
 
         private SourceInputStream(Source matInput, long maxLength) {
@@ -433,4 +1236,19 @@ public class Sources {
     private Sources() {
     }
 
+    // Segments are smaller than the max buffer capacity so that offsets stay positive. The
+    // overlap needs to be larger than the largest primitive that can be read at once.
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    private static final int SEGMENT_OVERLAP = 64;
+    private static final int MAPPED_FILE_BUFFER_SIZE = 512;
+
+    // Read-ahead chunks are large enough to amortize the hand-off between threads
+    private static final int READ_AHEAD_CHUNK_SIZE = 1024 * 1024;
+    private static final int MIN_READ_AHEAD_CHUNK_SIZE = 4096;
+    private static final long MAX_READ_AHEAD_CHUNKS = 1024;
+
+    // Touching one byte per page is enough to fault it in. The checksum keeps the reads from being optimized away.
+    private static final int PAGE_SIZE = 4096;
+    private static volatile int touchedChecksum = 0;
+
 }
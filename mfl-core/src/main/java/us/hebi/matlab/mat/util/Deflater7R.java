@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Deflater;
+
+/**
+ * Provides reflective access to {@link Deflater#deflate(byte[], int, int, int)}
+ * that was added in Java 7. Flushing lets a deflated stream end on a byte
+ * boundary without being finished, which is required for concatenating
+ * independently compressed blocks. Callers need to check {@link #isAvailable()}
+ * and fall back to finished streams on earlier platforms.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class Deflater7R {
+
+    /**
+     * Same as Deflater.SYNC_FLUSH
+     */
+    public static final int SYNC_FLUSH = 2;
+
+    /**
+     * Same as Deflater.FULL_FLUSH
+     */
+    public static final int FULL_FLUSH = 3;
+
+    /**
+     * @return true if flushing is supported by the runtime
+     */
+    public static boolean isAvailable() {
+        return DEFLATE_FLUSH != null;
+    }
+
+    /**
+     * @param deflater deflater
+     * @param output   output buffer
+     * @param offset   offset into the output buffer
+     * @param length   max number of bytes to write
+     * @param flush    flush mode
+     * @return number of compressed bytes
+     * @throws IllegalStateException if the method is not available
+     */
+    public static int deflate(Deflater deflater, byte[] output, int offset, int length, int flush) {
+        if (DEFLATE_FLUSH == null)
+            throw new IllegalStateException("Deflater::deflate with flush mode requires Java 7");
+        try {
+            return (Integer) DEFLATE_FLUSH.invoke(deflater, output, offset, length, flush);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Method DEFLATE_FLUSH;
+
+    static {
+        Method method;
+        try {
+            method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (Exception notAvailable) {
+            method = null;
+        }
+        DEFLATE_FLUSH = method;
+    }
+
+}
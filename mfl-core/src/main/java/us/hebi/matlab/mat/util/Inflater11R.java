@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Provides reflective access to {@link Inflater#inflate(ByteBuffer)} that was
+ * added in Java 11. It lets data get inflated straight into direct buffers
+ * rather than going through an intermediate byte array. Callers need to check
+ * {@link #isAvailable()} and fall back to array based inflation on earlier
+ * platforms.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class Inflater11R {
+
+    /**
+     * @return true if inflating into buffers is supported by the runtime
+     */
+    public static boolean isAvailable() {
+        return INFLATE_BUFFER != null;
+    }
+
+    /**
+     * Inflates into the remaining space of the output buffer and moves its position forward
+     *
+     * @param inflater inflater
+     * @param output   output buffer
+     * @return number of inflated bytes
+     * @throws DataFormatException   if the compressed data is invalid
+     * @throws IllegalStateException if the method is not available
+     */
+    public static int inflate(Inflater inflater, ByteBuffer output) throws DataFormatException {
+        if (INFLATE_BUFFER == null)
+            throw new IllegalStateException("Inflater::inflate(ByteBuffer) requires Java 11");
+        try {
+            return (Integer) INFLATE_BUFFER.invoke(inflater, output);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DataFormatException)
+                throw (DataFormatException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Method INFLATE_BUFFER;
+
+    static {
+        Method method;
+        try {
+            method = Inflater.class.getMethod("inflate", ByteBuffer.class);
+        } catch (Exception notAvailable) {
+            method = null;
+        }
+        INFLATE_BUFFER = method;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Limits the number of bytes that may be held by concurrently running tasks. A
+ * producer reserves bytes before handing work to another thread, and blocks if
+ * the budget is used up until consumers release their reservations.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class MemoryBudget {
+
+    public MemoryBudget(long maxBytes) {
+        checkArgument(maxBytes > 0, "budget needs to be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Blocks until the requested number of bytes is available
+     *
+     * @param numBytes number of bytes, may not exceed the total budget
+     * @throws IOException if the thread was interrupted while waiting
+     */
+    public synchronized void acquire(long numBytes) throws IOException {
+        checkArgument(numBytes >= 0 && numBytes <= maxBytes, "request exceeds total budget");
+        try {
+            while (reservedBytes + numBytes > maxBytes) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for memory budget");
+        }
+        reservedBytes += numBytes;
+    }
+
+    /**
+     * Reserves the requested number of bytes if they are available without blocking
+     *
+     * @param numBytes number of bytes, may not exceed the total budget
+     * @return true if the bytes were reserved
+     */
+    public synchronized boolean tryAcquire(long numBytes) {
+        checkArgument(numBytes >= 0 && numBytes <= maxBytes, "request exceeds total budget");
+        if (reservedBytes + numBytes > maxBytes)
+            return false;
+        reservedBytes += numBytes;
+        return true;
+    }
+
+    /**
+     * Reserves the requested number of bytes without blocking, even if this exceeds
+     * the budget. This is meant for correcting earlier estimates from threads that
+     * must not wait for other consumers.
+     *
+     * @param numBytes number of bytes
+     */
+    public synchronized void forceAcquire(long numBytes) {
+        checkArgument(numBytes >= 0, "number of bytes can't be negative");
+        reservedBytes += numBytes;
+    }
+
+    public synchronized void release(long numBytes) {
+        checkState(numBytes <= reservedBytes, "released more bytes than were acquired");
+        reservedBytes -= numBytes;
+        notifyAll();
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MemoryBudget{" +
+                "reservedBytes=" + reservedBytes +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+
+    private final long maxBytes;
+    private long reservedBytes = 0;
+
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import us.hebi.matlab.mat.format.BufferAllocator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Allocator for buffers whose memory is owned by someone else, e.g., views on a
+ * memory mapped file, or read-only views on a buffer of another allocator.
+ * Releasing a view does not free any memory, but it may hand the underlying
+ * buffer back to its owner. New buffers get allocated on the heap.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public final class NonOwningBufferAllocator implements BufferAllocator {
+
+    /**
+     * @return allocator for views on memory that is owned by a source, e.g., a memory mapped file
+     */
+    public static NonOwningBufferAllocator getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param owner  allocator that the underlying buffer has been obtained from
+     * @param buffer underlying buffer that gets released to the owner once the view gets released
+     * @return allocator for a single view on the underlying buffer
+     */
+    public static NonOwningBufferAllocator viewOf(BufferAllocator owner, ByteBuffer buffer) {
+        return new NonOwningBufferAllocator(checkNotNull(owner), checkNotNull(buffer));
+    }
+
+    private NonOwningBufferAllocator(BufferAllocator owner, ByteBuffer buffer) {
+        this.owner = owner;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public ByteBuffer allocate(int numBytes) {
+        return ByteBuffer.allocate(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void release(ByteBuffer view) {
+        if (owner != null)
+            owner.release(buffer);
+    }
+
+    private final BufferAllocator owner;
+    private final ByteBuffer buffer;
+
+    private static final NonOwningBufferAllocator SHARED = new NonOwningBufferAllocator(null, null);
+
+}
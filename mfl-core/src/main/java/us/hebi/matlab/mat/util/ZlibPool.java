@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static us.hebi.matlab.mat.util.Preconditions.*;
+
+/**
+ * Bounded pool of Inflater and Deflater instances. Each instance holds native
+ * zlib state that otherwise only gets released by finalization, which gets
+ * expensive for files with a large number of small compressed entries.
+ * <p>
+ * Instances that get released while the pool is full get ended right away.
+ * Released instances must not be used by the caller anymore. Raw (nowrap)
+ * instances get pooled separately because the format can't be changed after
+ * construction. This class is thread-safe.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class ZlibPool {
+
+    /**
+     * @return shared pool that holds up to twice the number of available processors
+     */
+    public static ZlibPool getDefault() {
+        return DEFAULT;
+    }
+
+    public ZlibPool(int maxPooled) {
+        checkArgument(maxPooled >= 0, "pool size can't be negative");
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return inflater in its initial state
+     */
+    public Inflater borrowInflater() {
+        return borrowInflater(false);
+    }
+
+    /**
+     * @param nowrap true for raw deflate data without the zlib header and checksum
+     * @return inflater in its initial state
+     */
+    public Inflater borrowInflater(boolean nowrap) {
+        ArrayDeque<Inflater> pool = nowrap ? rawInflaters : inflaters;
+        Inflater inflater;
+        synchronized (pool) {
+            inflater = pool.pollLast();
+        }
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * @param inflater inflater that has been obtained via {@link #borrowInflater()}
+     */
+    public void release(Inflater inflater) {
+        release(inflater, false);
+    }
+
+    /**
+     * @param inflater inflater that has been obtained via {@link #borrowInflater(boolean)}
+     * @param nowrap   same value that the inflater has been borrowed with
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        ArrayDeque<Inflater> pool = nowrap ? rawInflaters : inflaters;
+        inflater.reset();
+        synchronized (pool) {
+            if (pool.size() < maxPooled) {
+                pool.addLast(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    /**
+     * @param level compression level
+     * @return deflater in its initial state with the specified level
+     */
+    public Deflater borrowDeflater(int level) {
+        return borrowDeflater(level, false);
+    }
+
+    /**
+     * @param level  compression level
+     * @param nowrap true for raw deflate data without the zlib header and checksum
+     * @return deflater in its initial state with the specified level
+     */
+    public Deflater borrowDeflater(int level, boolean nowrap) {
+        ArrayDeque<Deflater> pool = nowrap ? rawDeflaters : deflaters;
+        Deflater deflater;
+        synchronized (pool) {
+            deflater = pool.pollLast();
+        }
+        if (deflater == null)
+            return new Deflater(level, nowrap);
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * @param deflater deflater that has been obtained via {@link #borrowDeflater(int)}
+     */
+    public void release(Deflater deflater) {
+        release(deflater, false);
+    }
+
+    /**
+     * @param deflater deflater that has been obtained via {@link #borrowDeflater(int, boolean)}
+     * @param nowrap   same value that the deflater has been borrowed with
+     */
+    public void release(Deflater deflater, boolean nowrap) {
+        ArrayDeque<Deflater> pool = nowrap ? rawDeflaters : deflaters;
+        deflater.reset();
+        synchronized (pool) {
+            if (pool.size() < maxPooled) {
+                pool.addLast(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * Ends all pooled instances
+     */
+    public void clear() {
+        endInflaters(inflaters);
+        endInflaters(rawInflaters);
+        endDeflaters(deflaters);
+        endDeflaters(rawDeflaters);
+    }
+
+    private static void endInflaters(ArrayDeque<Inflater> pool) {
+        synchronized (pool) {
+            while (!pool.isEmpty()) {
+                pool.pollLast().end();
+            }
+        }
+    }
+
+    private static void endDeflaters(ArrayDeque<Deflater> pool) {
+        synchronized (pool) {
+            while (!pool.isEmpty()) {
+                pool.pollLast().end();
+            }
+        }
+    }
+
+    public int getNumPooledInflaters() {
+        synchronized (inflaters) {
+            synchronized (rawInflaters) {
+                return inflaters.size() + rawInflaters.size();
+            }
+        }
+    }
+
+    public int getNumPooledDeflaters() {
+        synchronized (deflaters) {
+            synchronized (rawDeflaters) {
+                return deflaters.size() + rawDeflaters.size();
+            }
+        }
+    }
+
+    private final int maxPooled;
+    private final ArrayDeque<Inflater> inflaters = new ArrayDeque<Inflater>();
+    private final ArrayDeque<Inflater> rawInflaters = new ArrayDeque<Inflater>();
+    private final ArrayDeque<Deflater> deflaters = new ArrayDeque<Deflater>();
+    private final ArrayDeque<Deflater> rawDeflaters = new ArrayDeque<Deflater>();
+
+    private static final ZlibPool DEFAULT = new ZlibPool(2 * Runtime.getRuntime().availableProcessors());
+
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import org.junit.Test;
+import us.hebi.matlab.mat.types.MatFile;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class ArenaBufferAllocatorTest {
+
+    @Test
+    public void testBumpAllocation() {
+        ArenaBufferAllocator arena = new ArenaBufferAllocator(1024);
+
+        ByteBuffer first = arena.allocate(13);
+        ByteBuffer second = arena.allocate(100);
+        assertTrue(first.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), first.order());
+        assertEquals(13, first.capacity());
+        assertEquals(100, second.limit());
+        assertEquals(1024, arena.getReservedBytes());
+
+        // Buffers don't overlap and start out zeroed
+        while (first.hasRemaining())
+            first.put((byte) -1);
+        while (second.hasRemaining())
+            assertEquals(0, second.get());
+
+        // Full slabs and large buffers reserve more memory
+        for (int i = 0; i < 5; i++) {
+            arena.allocate(200);
+        }
+        assertEquals(2 * 1024, arena.getReservedBytes());
+        arena.allocate(1000);
+        assertEquals(2 * 1024 + 1000, arena.getReservedBytes());
+        assertEquals(13 + 100 + 5 * 200 + 1000, arena.getAllocatedBytes());
+
+        arena.close();
+        assertEquals(0, arena.getReservedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAllocateAfterClose() {
+        ArenaBufferAllocator arena = new ArenaBufferAllocator();
+        arena.close();
+        arena.allocate(8);
+    }
+
+    @Test
+    public void testReadWithArena() throws Exception {
+        MatFile input = Mat5.newMatFile()
+                .addArray("matrix", Mat5.newMatrix(30, 20))
+                .addArray("cell", Mat5.newCell(2, 1)
+                        .set(0, Mat5.newString("text"))
+                        .set(1, Mat5.newLogicalScalar(true)));
+        ((Matrix) input.getArray("matrix")).setDouble(7, 7);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        Mat5.newWriter(Sinks.wrap(buffer).nativeOrder()).writeMat(input);
+        buffer.flip();
+
+        Mat5File result = Mat5.newReader(Sources.wrap(buffer))
+                .enableArenaAllocation(1024)
+                .readMat();
+        assertEquals(input, result);
+        result.close();
+    }
+
+}
@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Matrix;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class Mat5LoggerTest {
+
+    static File folder = new File("tmp-Mat5LoggerTest");
+
+    @Before
+    public void createFolder() {
+        assertTrue("Could not create temporary folder: " + folder.getAbsolutePath(), folder.mkdir());
+    }
+
+    @After
+    public void deleteFolder() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue("Could not delete temporary folder: " + folder.getAbsolutePath(), folder.delete());
+    }
+
+    @Test
+    public void testRollOverBySize() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Mat5Logger logger = Mat5.newLogger(folder, "log", executor)
+                    .setMaxSegmentBytes(100 * (8 + 2))
+                    .setMaxPendingSegments(1);
+            int time = logger.addChannel("time", MatlabType.Double);
+            int value = logger.addChannel("value", MatlabType.Int16);
+
+            int numSamples = 250;
+            for (int i = 0; i < numSamples; i++) {
+                logger.setDouble(time, i * 0.001);
+                if (i % 2 == 0) // skipped values are zero
+                    logger.setLong(value, -i);
+                logger.nextSample();
+            }
+            logger.setDouble(time, -1); // incomplete sample
+            logger.close();
+
+            List<File> files = logger.getWrittenFiles();
+            assertEquals(3, files.size());
+            assertEquals(new File(folder, "log-0002.mat"), files.get(2));
+
+            int sample = 0;
+            for (File file : files) {
+                try (Mat5File mat = Mat5.readFromFile(file)) {
+                    Matrix times = mat.getMatrix("time");
+                    Matrix values = mat.getMatrix("value");
+                    assertEquals(MatlabType.Int16, values.getType());
+                    assertEquals(1, times.getNumCols());
+                    for (int row = 0; row < times.getNumRows(); row++, sample++) {
+                        assertEquals(sample * 0.001, times.getDouble(row), 0);
+                        assertEquals(sample % 2 == 0 ? -sample : 0, values.getLong(row));
+                    }
+                }
+            }
+            assertEquals(numSamples, sample);
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRollOverManually() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Mat5Logger logger = Mat5.newLogger(folder, "manual", executor)) {
+            int channel = logger.addChannel("channel", MatlabType.UInt8);
+            logger.rollOver(); // nothing to write
+            logger.setLong(channel, 1);
+            logger.nextSample();
+            logger.rollOver();
+            logger.setLong(channel, 2);
+            logger.nextSample();
+            logger.close();
+
+            List<File> files = logger.getWrittenFiles();
+            assertEquals(2, files.size());
+            try (Mat5File mat = Mat5.readFromFile(files.get(1))) {
+                assertEquals(2, mat.getMatrix("channel").getLong(0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import org.junit.Test;
+import us.hebi.matlab.mat.types.MatFile;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+import static us.hebi.matlab.mat.util.Casts.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class Mat5StreamingMatrixTest {
+
+    @Test
+    public void testSpilledRowsInBothByteOrders() throws Exception {
+        int numRows = 53;
+        int numCols = 3;
+        try (Mat5StreamingMatrix matrix = Mat5.newStreamingNumerical(numCols, MatlabType.Double, false, false, null, 10 * numCols * 8)) {
+            assertEquals(10, matrix.getBlockRows());
+            for (int row = 0; row < numRows; row++) {
+                matrix.addRow(row, row * 10, row * 100);
+            }
+            matrix.addDouble(-1); // incomplete row
+            assertArrayEquals(new int[]{numRows, numCols}, matrix.getDimensions());
+
+            // Values on disk and in memory
+            assertEquals(70, matrix.getDouble(7, 1), 0);
+            assertEquals(5200, matrix.getDouble(52, 2), 0);
+
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                Matrix result = writeAndRead(matrix, order);
+                assertArrayEquals(new int[]{numRows, numCols}, result.getDimensions());
+                for (int row = 0; row < numRows; row++) {
+                    assertEquals(row, result.getDouble(row, 0), 0);
+                    assertEquals(row * 10, result.getDouble(row, 1), 0);
+                    assertEquals(row * 100, result.getDouble(row, 2), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testComplexAndLogical() throws Exception {
+        int numRows = 21;
+        try (Mat5StreamingMatrix complex = Mat5.newStreamingNumerical(2, MatlabType.Int16, false, true, null, 16);
+             Mat5StreamingMatrix logical = Mat5.newStreamingLogical(4)) {
+            for (int row = 0; row < numRows; row++) {
+                complex.addComplex(row, -row);
+                complex.addLong(row * 2);
+                logical.addRow(row % 2, 0, 1, row % 3);
+            }
+            assertEquals(-7, complex.getImaginaryLong(7, 0));
+
+            Matrix actualComplex = writeAndRead(complex, ByteOrder.BIG_ENDIAN);
+            assertEquals(MatlabType.Int16, actualComplex.getType());
+            assertTrue(actualComplex.isComplex());
+            Matrix actualLogical = writeAndRead(logical, ByteOrder.nativeOrder());
+            assertTrue(actualLogical.isLogical());
+
+            for (int row = 0; row < numRows; row++) {
+                assertEquals(row, actualComplex.getLong(row, 0));
+                assertEquals(-row, actualComplex.getImaginaryLong(row, 0));
+                assertEquals(row * 2, actualComplex.getLong(row, 1));
+                assertEquals(0, actualComplex.getImaginaryLong(row, 1));
+                assertEquals(row % 2 == 1, actualLogical.getBoolean(row, 0));
+                assertFalse(actualLogical.getBoolean(row, 1));
+                assertTrue(actualLogical.getBoolean(row, 2));
+                assertEquals(row % 3 != 0, actualLogical.getBoolean(row, 3));
+            }
+        }
+    }
+
+    @Test
+    public void testTemporaryFileGetsDeleted() throws Exception {
+        File folder = new File("tmp-Mat5StreamingMatrixTest");
+        assertTrue(folder.mkdir());
+        try {
+            Mat5StreamingMatrix matrix = Mat5.newStreamingNumerical(1, MatlabType.Int32, false, false, folder, 4);
+            matrix.addLong(1);
+            matrix.addLong(2);
+            assertEquals(1, folder.list().length);
+            matrix.close();
+            assertEquals(0, folder.list().length);
+        } finally {
+            assertTrue(folder.delete());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAppendOnly() throws Exception {
+        try (Mat5StreamingMatrix matrix = Mat5.newStreamingMatrix(1)) {
+            matrix.addDouble(1);
+            matrix.setDouble(0, 2);
+        }
+    }
+
+    private static Matrix writeAndRead(Mat5StreamingMatrix matrix, ByteOrder order) throws IOException {
+        MatFile mat = Mat5.newMatFile().addArray("data", matrix);
+        ByteBuffer buffer = ByteBuffer.allocate(sint32(mat.getUncompressedSerializedSize()));
+        try (Sink sink = Sinks.wrap(buffer).order(order)) {
+            Mat5.newWriter(sink).writeMat(mat);
+        }
+        buffer.flip();
+        return Mat5.newReader(Sources.wrap(buffer)).readMat().getMatrix("data");
+    }
+
+}
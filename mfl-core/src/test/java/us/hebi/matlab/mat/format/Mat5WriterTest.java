@@ -25,9 +25,17 @@ import org.junit.Before;
 import org.junit.Test;
 import us.hebi.matlab.mat.tests.mat5.MatTestUtil;
 import us.hebi.matlab.mat.types.*;
+import us.hebi.matlab.mat.util.MemoryBudget;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static us.hebi.matlab.mat.format.Mat5WriteUtil.*;
 
@@ -150,4 +158,416 @@ public class Mat5WriterTest {
 
     }
 
+    @Test
+    public void writeIndex() throws Exception {
+        Mat5File input = MatTestUtil.readMat("mcos/simpleempty.mat", false);
+        input.addArray("matrix", Mat5.newMatrix(20, 30))
+                .addArray("text", Mat5.newString("abc"));
+        checkIndex(input, Mat5.newWriter(sink).setDeflateLevel(Deflater.NO_COMPRESSION));
+        checkIndex(input, Mat5.newWriter(sink).setDeflateLevel(Deflater.BEST_SPEED));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            checkIndex(input, Mat5.newWriter(sink).enableConcurrentCompression(executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void checkIndex(Mat5File input, Mat5Writer writer) throws Exception {
+        buffer.clear();
+        Mat5Index index = writer.enableIndex().writeMat(input).getIndex();
+        buffer.flip();
+
+        // Index written during serialization should match an index created by scanning
+        Mat5Index scannedIndex = Mat5.newReader(Sources.wrap(buffer.duplicate())).readMatLazily().getIndex();
+        Assert.assertEquals(scannedIndex.toString(), index.toString());
+        Assert.assertEquals(4, index.getEntries().size());
+        Assert.assertTrue(index.getEntries().get(3).isSubsystem());
+
+        // Sidecar round trip
+        ByteBuffer indexBuffer = ByteBuffer.allocate(4096);
+        index.writeTo(Sinks.wrap(indexBuffer));
+        indexBuffer.flip();
+        Mat5Index storedIndex = Mat5Index.readFrom(Sources.wrap(indexBuffer));
+        Assert.assertEquals(index.toString(), storedIndex.toString());
+
+        // Reading with an index should not need to look at other entries
+        Mat5LazyFile output = Mat5.newReader(Sources.wrap(buffer.duplicate())).readMatLazily(storedIndex);
+        Assert.assertEquals(input.getArray("text"), output.getArray("text"));
+        Assert.assertFalse(output.isLoaded("matrix"));
+        Assert.assertEquals("SimpleEmpty", output.getObject("obj").getClassName());
+        Assert.assertEquals(input.getArray("matrix"), output.getArray("matrix"));
+    }
+
+    @Test
+    public void writeBlockCompressed() throws Exception {
+        Matrix matrix = Mat5.newMatrix(400, 300);
+        for (int i = 0; i < matrix.getNumElements(); i++) {
+            matrix.setDouble(i, (i * 31) % 1000);
+        }
+        MatFile input = Mat5.newMatFile()
+                .addArray("small", Mat5.newScalar(1))
+                .addArray("large", matrix);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                    .enableConcurrentCompression(executor)
+                    .enableBlockCompression(64 * 1024)
+                    .writeMat(input);
+        } finally {
+            executor.shutdown();
+        }
+        buffer.flip();
+        Assert.assertEquals(input, Mat5.newReader(Sources.wrap(buffer.duplicate())).readMat());
+
+        // The combined stream needs to be valid zlib data including the checksum
+        Mat5Index.Entry entry = Mat5.newReader(Sources.wrap(buffer.duplicate())).readIndex().getEntry("large");
+        byte[] compressed = new byte[(int) entry.getStoredSize() - Mat5.MATRIX_TAG_SIZE];
+        buffer.position((int) entry.getOffset() + Mat5.MATRIX_TAG_SIZE);
+        buffer.get(compressed);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] uncompressed = new byte[(int) entry.getUncompressedSize()];
+            Assert.assertEquals(uncompressed.length, inflater.inflate(uncompressed));
+            Assert.assertTrue(inflater.finished());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test
+    public void writeBlocksWithReusedDeflaters() throws Exception {
+        Matrix matrix = Mat5.newMatrix(400, 300);
+        for (int i = 0; i < matrix.getNumElements(); i++) {
+            matrix.setDouble(i, (i * 31) % 1000);
+        }
+        MatFile input = Mat5.newMatFile().addArray("large", matrix);
+
+        // Pooled deflaters change their level on the first call after being borrowed
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int level : new int[]{Deflater.BEST_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+                ByteBuffer buffer = ByteBuffer.allocate(2 * 1024 * 1024);
+                Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                        .setDeflateLevel(level)
+                        .enableConcurrentCompression(executor)
+                        .enableBlockCompression(64 * 1024)
+                        .writeMat(input);
+                buffer.flip();
+                Assert.assertEquals(input, Mat5.newReader(Sources.wrap(buffer)).readMat());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void streamBlocksWithinBudget() throws Exception {
+        // Random data doesn't compress, so the finished blocks need to be written before the next ones get submitted
+        byte[] data = new byte[20 * 32 * 1024 + 123];
+        new Random(0).nextBytes(data);
+        MemoryBudget budget = new MemoryBudget(2 * 32 * 1024);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * data.length);
+        Sink sink = Sinks.wrap(buffer).nativeOrder();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BlockDeflater blocks = new BlockDeflater(executor, Deflater.BEST_SPEED, 32 * 1024, budget, false);
+            blocks.streamTo(sink);
+            blocks.write(data, 0, data.length);
+            blocks.close();
+            blocks.writeTo(sink);
+            Assert.assertEquals(21, blocks.getBlockOffsets().length);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(0, budget.getReservedBytes());
+
+        // Tag size got patched and the stream is valid zlib data
+        buffer.flip();
+        Assert.assertEquals(Mat5Type.Compressed.id(), buffer.getInt());
+        byte[] compressed = new byte[buffer.getInt()];
+        buffer.get(compressed);
+        Assert.assertFalse(buffer.hasRemaining());
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] uncompressed = new byte[data.length];
+            Assert.assertEquals(data.length, inflater.inflate(uncompressed));
+            Assert.assertTrue(inflater.finished());
+            Assert.assertArrayEquals(data, uncompressed);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test
+    public void writeIndependentBlocks() throws Exception {
+        Matrix matrix = Mat5.newMatrix(400, 300);
+        for (int i = 0; i < matrix.getNumElements(); i++) {
+            matrix.setDouble(i, (i * 31) % 1000);
+        }
+        MatFile input = Mat5.newMatFile()
+                .addArray("small", Mat5.newScalar(1))
+                .addArray("large", matrix);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Mat5Index index = Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                    .enableConcurrentCompression(executor)
+                    .enableIndependentBlockCompression(64 * 1024)
+                    .enableIndex()
+                    .writeMat(input)
+                    .getIndex();
+            buffer.flip();
+
+            // Regular readers see a normal compressed entry
+            Assert.assertEquals(input, Mat5.newReader(Sources.wrap(buffer.duplicate())).readMat());
+            Assert.assertEquals(0, index.getEntry("small").getNumBlocks());
+            Assert.assertEquals(15, index.getEntry("large").getNumBlocks());
+
+            // Block offsets survive the sidecar round trip
+            ByteBuffer indexBuffer = ByteBuffer.allocate(4096);
+            index.writeTo(Sinks.wrap(indexBuffer));
+            indexBuffer.flip();
+            Mat5Index storedIndex = Mat5Index.readFrom(Sources.wrap(indexBuffer));
+            Assert.assertEquals(index.toString(), storedIndex.toString());
+
+            // Blocks get inflated concurrently
+            Mat5LazyFile output = Mat5.newReader(Sources.wrap(buffer.duplicate()))
+                    .enableConcurrentDecompression(executor)
+                    .readMatLazily(storedIndex);
+            Assert.assertEquals(matrix, output.getArray("large"));
+
+            Mat5LazyFile zeroCopy = Mat5.newReader(Sources.wrap(buffer.duplicate()))
+                    .enableConcurrentDecompression(executor)
+                    .enableZeroCopy()
+                    .readMatLazily(storedIndex);
+            Assert.assertEquals(matrix, zeroCopy.getArray("large"));
+            Assert.assertEquals(input.getArray("small"), zeroCopy.getArray("small"));
+
+            // Blocks get inflated into a temporary buffer from the allocator, also with zero-copy
+            long uncompressedSize = storedIndex.getEntry("large").getUncompressedSize();
+            PooledBufferAllocator allocator = new PooledBufferAllocator(false, 4 << 20, 4 << 20, 4 << 20);
+            Mat5LazyFile pooled = Mat5.newReader(Sources.wrap(buffer.duplicate()))
+                    .enableConcurrentDecompression(executor)
+                    .enableZeroCopy()
+                    .setBufferAllocator(allocator)
+                    .readMatLazily(storedIndex);
+            Assert.assertEquals(matrix, pooled.getArray("large"));
+            Assert.assertTrue(allocator.getPooledBytes() + allocator.getThreadCachedBytes() >= uncompressedSize);
+
+            // Eager reads make use of the blocks if an index is available
+            allocator = new PooledBufferAllocator(false, 4 << 20, 4 << 20, 4 << 20);
+            Mat5File eager = Mat5.newReader(Sources.wrap(buffer.duplicate()))
+                    .enableConcurrentDecompression(executor)
+                    .setBufferAllocator(allocator)
+                    .setIndex(storedIndex)
+                    .readMat();
+            Assert.assertEquals(input, eager);
+            Assert.assertTrue(allocator.getPooledBytes() + allocator.getThreadCachedBytes() >= uncompressedSize);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void writeWithBufferLimit() throws Exception {
+        MatFile input = Mat5.newMatFile();
+        for (int i = 0; i < 20; i++) {
+            Matrix matrix = Mat5.newMatrix(10 + 7 * i, 30);
+            for (int j = 0; j < matrix.getNumElements(); j++) {
+                matrix.setDouble(j, (j * i) % 100);
+            }
+            input.addArray("var" + i, matrix);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Written as a whole with the largest entries being compressed first
+            Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                    .enableConcurrentCompression(executor)
+                    .setMaxBufferedBytes(16 * 1024)
+                    .writeMat(input);
+            buffer.flip();
+            Assert.assertEquals(input, Mat5.newReader(Sources.wrap(buffer)).readMat());
+
+            // Entries get written eagerly when the limit is reached
+            buffer.clear();
+            Sink sink = Sinks.wrap(buffer).nativeOrder();
+            Mat5Writer writer = Mat5.newWriter(sink)
+                    .enableConcurrentCompression(executor)
+                    .setMaxBufferedBytes(1024);
+            writer.writeArray("a", input.getArray("var0"));
+            writer.writeArray("b", input.getArray("var1"));
+            Assert.assertTrue(sink.position() > 0);
+            writer.flush();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void computeNestedSizesOnce() throws Exception {
+        final int[] numSizeCalls = new int[1];
+        class CountingCell extends MatCell {
+            CountingCell() {
+                super(new int[]{1, 1});
+            }
+
+            @Override
+            public int getMat5Size(String name) {
+                numSizeCalls[0]++;
+                return super.getMat5Size(name);
+            }
+        }
+
+        // Deeply nested cells would otherwise compute each size once per parent
+        final int depth = 30;
+        MatCell root = new CountingCell();
+        MatCell leaf = root;
+        for (int i = 1; i < depth; i++) {
+            MatCell child = new CountingCell();
+            leaf.set(0, child);
+            leaf = child;
+        }
+        leaf.set(0, Mat5.newScalar(1));
+
+        Mat5.newWriter(sink).setDeflateLevel(Deflater.NO_COMPRESSION).writeArray("root", root);
+        Assert.assertTrue("size calls: " + numSizeCalls[0], numSizeCalls[0] <= 2 * depth);
+
+        numSizeCalls[0] = 0;
+        int size = computeArraySize("root", root);
+        Assert.assertEquals(sink.position(), size);
+        Assert.assertTrue("size calls: " + numSizeCalls[0], numSizeCalls[0] <= depth);
+
+        // Sizes must not be cached across passes
+        leaf.set(0, Mat5.newMatrix(10, 10));
+        Assert.assertEquals(size + 99 * 8, computeArraySize("root", root));
+    }
+
+    @Test
+    public void computeRootSizeOncePerEntry() throws Exception {
+        final int[] numRootSizeCalls = new int[1];
+        MatCell root = new MatCell(new int[]{1, 1}) {
+            @Override
+            public int getMat5Size(String name) {
+                if ("root".equals(name))
+                    numRootSizeCalls[0]++;
+                return super.getMat5Size(name);
+            }
+        };
+        root.set(0, Mat5.newMatrix(200, 100));
+
+        // Sampling, block compression, and the index all need the size before and after writing
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Mat5.newWriter(sink)
+                    .setCompressionPolicy(new SamplingCompressionPolicy(1024, 0.1, 0.5, Deflater.BEST_SPEED))
+                    .enableConcurrentCompression(executor)
+                    .enableBlockCompression(32 * 1024)
+                    .enableIndex()
+                    .writeArray("root", root)
+                    .flush();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Once for all decisions, plus the matrix tags of the sample and the actual data
+        Assert.assertEquals(3, numRootSizeCalls[0]);
+    }
+
+    @Test
+    public void writeWithCompressionPolicy() throws Exception {
+        Random random = new Random(0);
+        Matrix blob = Mat5.newMatrix(256, 256, MatlabType.Int8);
+        Matrix nibbles = Mat5.newMatrix(256, 256, MatlabType.UInt8);
+        for (int i = 0; i < blob.getNumElements(); i++) {
+            blob.setLong(i, random.nextInt(256) - 128);
+            nibbles.setLong(i, random.nextInt(16));
+        }
+        MatFile input = Mat5.newMatFile()
+                .addArray("blob", blob)
+                .addArray("nibbles", nibbles)
+                .addArray("zeros", Mat5.newMatrix(256, 256));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (ExecutorService concurrency : new ExecutorService[]{null, executor}) {
+                ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+                Mat5Writer writer = Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                        .setCompressionPolicy(new SamplingCompressionPolicy(16 * 1024, 0.1, 0.5, Deflater.BEST_COMPRESSION))
+                        .enableStatistics();
+                if (concurrency != null)
+                    writer.enableConcurrentCompression(concurrency);
+                writer.writeMat(input);
+
+                List<Mat5Writer.EntryStatistics> stats = writer.getStatistics();
+                Assert.assertEquals(3, stats.size());
+                Assert.assertEquals("blob", stats.get(0).getName());
+                Assert.assertEquals(Deflater.NO_COMPRESSION, stats.get(0).getDeflateLevel());
+                Assert.assertEquals(stats.get(0).getUncompressedSize(), stats.get(0).getStoredSize());
+                Assert.assertEquals(Deflater.BEST_SPEED, stats.get(1).getDeflateLevel());
+                Assert.assertEquals(Deflater.BEST_COMPRESSION, stats.get(2).getDeflateLevel());
+                Assert.assertTrue(stats.get(2).getStoredSize() < stats.get(2).getUncompressedSize() / 100);
+
+                buffer.flip();
+                Assert.assertEquals(input, Mat5.newReader(Sources.wrap(buffer)).readMat());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void writeCompressedToStream() throws Exception {
+        Matrix noise = Mat5.newMatrix(200, 100);
+        Random random = new Random(0);
+        for (int i = 0; i < noise.getNumElements(); i++) {
+            noise.setDouble(i, random.nextDouble());
+        }
+        MatFile input = Mat5.newMatFile()
+                .addArray("noise", noise)
+                .addArray("text", Mat5.newString("abc"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Sink sink = Sinks.wrapNonSeeking(output).nativeOrder();
+        Assert.assertFalse(((AbstractSink) sink).isSeekable());
+        Mat5.newWriter(sink).writeMat(input);
+
+        MatFile result = Mat5.newReader(Sources.wrap(output.toByteArray())).readMat();
+        Assert.assertEquals(input, result);
+    }
+
+    @Test
+    public void rejectSubsystemForStream() throws Exception {
+        // The subsystem offset in the header can't be updated without seeking
+        Mat5File input = MatTestUtil.readMat("mcos/simpleempty.mat", false);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            Mat5.newWriter(Sinks.wrapNonSeeking(output)).writeMat(input);
+            Assert.fail("expected subsystem to be rejected");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(0, output.size());
+    }
+
+    @Test
+    public void combineAdler32() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(0).nextBytes(data);
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70_000);
+        Adler32 second = new Adler32();
+        second.update(data, 70_000, 30_000);
+        Assert.assertEquals(full.getValue(), BlockDeflater.combineAdler32(first.getValue(), second.getValue(), 30_000));
+    }
+
 }
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import org.junit.Test;
+import us.hebi.matlab.mat.types.MatFile;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class PooledBufferAllocatorTest {
+
+    @Test
+    public void testRecycleSizeClasses() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(true, 4096, 1024, 2048);
+
+        ByteBuffer first = allocator.allocate(1000);
+        assertTrue(first.isDirect());
+        assertEquals(0, first.position());
+        assertEquals(1000, first.limit());
+        assertEquals(1024, first.capacity());
+        first.putLong(0, -1);
+        allocator.release(first);
+
+        // Same size class gets recycled and zeroed
+        ByteBuffer second = allocator.allocate(600);
+        assertSame(first, second);
+        assertEquals(600, second.limit());
+        assertEquals(0, second.getLong(0));
+        assertEquals(1, allocator.getNumHits());
+        assertEquals(1, allocator.getNumMisses());
+
+        // Thread cache is full, so the next buffer goes to the shared pool
+        ByteBuffer third = allocator.allocate(1024);
+        allocator.release(second);
+        allocator.release(third);
+        assertEquals(1024, allocator.getPooledBytes());
+
+        // Large buffers don't get pooled
+        ByteBuffer large = allocator.allocate(4000);
+        assertEquals(4000, large.capacity());
+        allocator.release(large);
+        assertEquals(1024, allocator.getPooledBytes());
+
+        allocator.clear();
+        assertEquals(0, allocator.getPooledBytes());
+    }
+
+    @Test
+    public void testClearOtherThreadCaches() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true, 4096, 1024, 2048);
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                allocator.release(allocator.allocate(1000));
+                released.countDown();
+                try {
+                    done.await(); // keeps the thread and its cache alive
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        try {
+            released.await();
+            assertEquals(0, allocator.getPooledBytes());
+            assertEquals(1024, allocator.getThreadCachedBytes());
+
+            // Buffers cached by other threads get freed as well
+            allocator.clear();
+            assertEquals(0, allocator.getThreadCachedBytes());
+        } finally {
+            done.countDown();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testReadAndWriteWithPool() throws Exception {
+        PooledBufferAllocator allocator = new PooledBufferAllocator();
+        MatFile input = Mat5.newMatFile();
+        for (int i = 0; i < 50; i++) {
+            Matrix matrix = Mat5.newMatrix(10 + i, 20);
+            matrix.setDouble(i, i);
+            input.addArray("var" + i, matrix);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Mat5.newWriter(Sinks.wrap(buffer).nativeOrder())
+                    .enableConcurrentCompression(executor, allocator)
+                    .writeMat(input);
+        } finally {
+            executor.shutdown();
+        }
+        buffer.flip();
+
+        for (int i = 0; i < 2; i++) {
+            Mat5File result = Mat5.newReader(Sources.wrap(buffer.duplicate()))
+                    .setBufferAllocator(allocator)
+                    .readMat();
+            assertEquals(input, result);
+            result.close();
+        }
+        assertTrue(allocator.toString(), allocator.getNumHits() >= 50);
+    }
+
+}
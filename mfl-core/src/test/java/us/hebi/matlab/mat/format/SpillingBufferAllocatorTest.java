@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.format;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.hebi.matlab.mat.types.MatFile;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class SpillingBufferAllocatorTest {
+
+    static File folder = new File("tmp-SpillingBufferAllocatorTest");
+
+    @Before
+    public void createFolder() {
+        assertTrue("Could not create temporary folder: " + folder.getAbsolutePath(), folder.mkdir());
+    }
+
+    @After
+    public void deleteFolder() {
+        assertTrue("Could not delete temporary folder: " + folder.getAbsolutePath(), folder.delete());
+    }
+
+    @Test
+    public void testSpillOnceBudgetIsExhausted() {
+        SpillingBufferAllocator allocator = new SpillingBufferAllocator(10000, folder).setMinSpillSize(1000);
+
+        ByteBuffer memory = allocator.allocate(8000);
+        ByteBuffer small = allocator.allocate(500);
+        ByteBuffer spilled = allocator.allocate(8000);
+        assertEquals(8500, allocator.getMemoryBytes());
+        assertEquals(8000, allocator.getSpilledBytes());
+        assertEquals(1, folder.list().length);
+
+        // Spilled buffers behave like memory
+        assertEquals(ByteOrder.nativeOrder(), spilled.order());
+        assertEquals(8000, spilled.remaining());
+        assertEquals(0, spilled.getLong(7992));
+        spilled.putLong(7992, 42);
+        assertEquals(42, spilled.getLong(7992));
+
+        allocator.release(spilled);
+        allocator.release(small);
+        assertEquals(8000, allocator.getMemoryBytes());
+        assertEquals(0, allocator.getSpilledBytes());
+        assertEquals(0, folder.list().length);
+
+        // Remaining files get deleted on close
+        allocator.allocate(4000);
+        assertEquals(1, allocator.getNumSpilledFiles());
+        allocator.close();
+        assertEquals(0, folder.list().length);
+        allocator.release(memory);
+    }
+
+    @Test
+    public void testReadWithSpilling() throws Exception {
+        Matrix matrix = Mat5.newMatrix(100, 100);
+        for (int i = 0; i < matrix.getNumElements(); i++) {
+            matrix.setDouble(i, i);
+        }
+        MatFile input = Mat5.newMatFile()
+                .addArray("a", matrix)
+                .addArray("b", matrix);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+        Mat5.newWriter(Sinks.wrap(buffer).nativeOrder()).writeMat(input);
+        buffer.flip();
+
+        SpillingBufferAllocator allocator = new SpillingBufferAllocator(100 * 100 * 8, folder);
+        Mat5File result = Mat5.newReader(Sources.wrap(buffer))
+                .setBufferAllocator(allocator)
+                .readMat();
+        assertEquals(input, result);
+        assertEquals(1, allocator.getNumSpilledFiles());
+
+        result.close();
+        assertEquals(0, allocator.getNumSpilledFiles());
+        assertEquals(0, allocator.getMemoryBytes());
+        assertEquals(0, folder.list().length);
+        allocator.close();
+    }
+
+}
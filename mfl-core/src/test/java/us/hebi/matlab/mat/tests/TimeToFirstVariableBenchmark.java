@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.tests;
+
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5LazyFile;
+import us.hebi.matlab.mat.types.MatFile;
+import us.hebi.matlab.mat.types.MappingPolicy;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sink;
+import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.types.Sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Measures the time it takes to open a large file and to read a single small variable
+ * that is stored at the end, once per {@link MappingPolicy}. This is not run as part of
+ * the unit tests.
+ * <p>
+ * Usage: [fileSizeMB] [file]. The file gets created if it does not exist yet. Note that
+ * a freshly written file is still in the page cache, so cold-cache numbers require an
+ * existing file and dropping the caches between runs, e.g., 'echo 3 > /proc/sys/vm/drop_caches'.
+ * The variable to be read is called 'target'.
+ *
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class TimeToFirstVariableBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        File file = new File(args.length > 1 ? args[1] : "TimeToFirstVariableBenchmark.mat");
+        boolean deleteFile = !file.exists();
+        try {
+            if (!file.exists())
+                createFile(file, sizeMB);
+            System.out.println(String.format("%s (%d MB)", file.getName(), file.length() / 1024 / 1024));
+
+            for (int i = 0; i < 5; i++) {
+                for (MappingPolicy policy : MappingPolicy.values()) {
+                    long start = System.nanoTime();
+                    try (Source source = Sources.openFile(file, policy);
+                         Mat5LazyFile mat = Mat5.newReader(source).readMatLazily()) {
+                        Matrix target = mat.getMatrix("target");
+                        if (target.getDouble(0) != 42)
+                            throw new AssertionError("unexpected value");
+                    }
+                    double millis = (System.nanoTime() - start) / 1E6;
+                    System.out.println(String.format("%-11s %8.2f ms", policy, millis));
+                }
+            }
+        } finally {
+            if (deleteFile && !file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    private static void createFile(File file, int sizeMB) throws IOException {
+        // Uncompressed fillers so that the file size matches the requested size
+        Matrix filler = Mat5.newMatrix(1024 * 1024 / 8, 16);
+        for (int i = 0; i < filler.getNumElements(); i++) {
+            filler.setDouble(i, i);
+        }
+        MatFile mat = Mat5.newMatFile();
+        for (int i = 0; i < Math.max(1, sizeMB / 16); i++) {
+            mat.addArray("filler" + i, filler);
+        }
+        mat.addArray("target", Mat5.newScalar(42));
+
+        try (Sink sink = Sinks.newStreamingFile(file)) {
+            Mat5.newWriter(sink)
+                    .setDeflateLevel(Deflater.NO_COMPRESSION)
+                    .writeMat(mat);
+        }
+    }
+
+}
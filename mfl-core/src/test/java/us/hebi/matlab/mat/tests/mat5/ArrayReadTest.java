@@ -23,13 +23,25 @@ package us.hebi.matlab.mat.tests.mat5;
 import org.junit.Test;
 import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.format.Mat5Index;
+import us.hebi.matlab.mat.format.Mat5LazyFile;
 import us.hebi.matlab.mat.types.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 import static org.junit.Assert.*;
 import static us.hebi.matlab.mat.format.Mat5.*;
@@ -467,4 +479,321 @@ public class ArrayReadTest {
         assertEquals(0, in.getSubsysOffset());
     }
 
+    @Test
+    public void testLazyFileReading() throws Exception {
+        File testFile = new File("ArrayReadTest.lazy.tmp");
+        File indexFile = Mat5Index.getSidecarFile(testFile);
+        try {
+            Mat5.writeToFile(Mat5.newMatFile()
+                    .addArray("first", Mat5.newMatrix(100, 100))
+                    .addArray("second", Mat5.newString("abc"))
+                    .addArray("third", Mat5.newScalar(3)), testFile);
+
+            try (Mat5LazyFile mat = Mat5.readFromFileLazily(testFile)) {
+                assertEquals(3, mat.getNumEntries());
+                assertEquals("second", mat.getEntryHeaders().get(1).getName());
+                assertFalse(mat.isLoaded("third"));
+
+                assertEquals(3, mat.getMatrix("third").getInt(0), 0);
+                assertTrue(mat.isLoaded("third"));
+                assertFalse(mat.isLoaded("first"));
+
+                assertEquals("abc", mat.getChar(1).getString());
+                assertEquals(3, mat.getNumEntries());
+                assertEquals(100, mat.getMatrix("first").getNumRows());
+
+                // Iterating loads everything and keeps the original order
+                List<String> names = new ArrayList<>();
+                for (MatFile.Entry entry : mat.getEntries()) {
+                    names.add(entry.getName());
+                }
+                assertEquals(Arrays.asList("first", "second", "third"), names);
+            }
+
+            // First call builds the sidecar index, second call uses it
+            for (int i = 0; i < 2; i++) {
+                try (Mat5LazyFile mat = Mat5.readFromFileLazily(testFile, indexFile)) {
+                    assertTrue(indexFile.exists());
+                    assertEquals(3, mat.getIndex().getEntries().size());
+                    assertEquals("abc", mat.getChar("second").getString());
+                    assertFalse(mat.isLoaded("first"));
+                }
+            }
+
+            // Appending entries keeps the header, but makes the index stale
+            Mat5.appendToFile(Mat5.newMatFile().addArray("fourth", Mat5.newScalar(4)), testFile);
+            try {
+                Mat5.readFromFileLazily(testFile, indexFile).close();
+                fail("stale index should be rejected");
+            } catch (IOException ioe) {
+                assertTrue(ioe.getMessage(), ioe.getMessage().contains("file size"));
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+            assertTrue("delete index file", indexFile.delete());
+        }
+    }
+
+    @Test
+    public void testPipelinedFileReading() throws Exception {
+        MatFile expected = Mat5.newMatFile();
+        for (int i = 0; i < 8; i++) {
+            Matrix matrix = Mat5.newMatrix(200, 50);
+            for (int j = 0; j < matrix.getNumElements(); j++) {
+                matrix.setDouble(j, i * j);
+            }
+            expected.addArray("var" + i, matrix);
+        }
+
+        File testFile = new File("ArrayReadTest.pipelined.tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Mat5.writeToFile(expected, testFile);
+            assertEquals(expected, Mat5.readFromFile(testFile, executor));
+        } finally {
+            executor.shutdown();
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testInflightLimit() throws Exception {
+        // Random data is incompressible, so each entry reserves the entire budget
+        Random random = new Random(0);
+        MatFile input = Mat5.newMatFile();
+        for (int i = 0; i < 8; i++) {
+            Matrix matrix = Mat5.newMatrix(100, 10);
+            for (int j = 0; j < matrix.getNumElements(); j++) {
+                matrix.setDouble(j, random.nextDouble());
+            }
+            input.addArray("var" + i, matrix);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+        Mat5.newWriter(Sinks.wrap(buffer).nativeOrder()).writeMat(input);
+        buffer.flip();
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ExecutorService countingExecutor = new AbstractExecutorService() {
+                @Override
+                public void execute(final Runnable command) {
+                    executor.execute(() -> {
+                        try {
+                            // Count once the task runs, i.e., after the reservation has been taken
+                            Thread.sleep(10);
+                            int numRunning = running.incrementAndGet();
+                            maxRunning.accumulateAndGet(numRunning, Math::max);
+                            try {
+                                command.run();
+                            } finally {
+                                running.decrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    });
+                }
+
+                // @formatter:off
+                @Override public void shutdown() { }
+                @Override public List<Runnable> shutdownNow() { return null; }
+                @Override public boolean isShutdown() { return false; }
+                @Override public boolean isTerminated() { return false; }
+                @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return false; }
+                // @formatter:on
+            };
+
+            MatFile result = Mat5.newReader(Sources.wrap(buffer))
+                    .enableConcurrentDecompression(countingExecutor)
+                    .setMaxInflightBytes(100 * 10 * 8)
+                    .readMat();
+            assertEquals(input, result);
+            assertEquals(1, maxRunning.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIndexScan() throws Exception {
+        MatFile mat = Mat5.newMatFile()
+                .addArray("large", Mat5.newMatrix(500, 500, MatlabType.Int16))
+                .addArray("text", Mat5.newString("some text"))
+                .addArray("empty", Mat5.newMatrix(0, 0))
+                .addArray("struct", Mat5.newStruct().set("field", Mat5.newScalar(1)))
+                .addArray("cell", Mat5.newCell(2, 3));
+
+        File testFile = new File("ArrayReadTest.scan.tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Mat5Index expected;
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                expected = Mat5.newWriter(sink).enableIndex().writeMat(mat).getIndex();
+            }
+
+            // Streaming file that only reads the beginning of each entry
+            checkScan(expected, Mat5.readIndexFromFile(testFile));
+
+            // Concurrent probes on a mapped file
+            try (Source source = Sources.openFile(testFile)) {
+                checkScan(expected, Mat5.newReader(source).enableConcurrentDecompression(executor).readIndex());
+            }
+
+            // Filtered root entries
+            try (Source source = Sources.openFile(testFile)) {
+                Mat5Index index = Mat5.newReader(source)
+                        .setEntryFilter(header -> header.getType() == MatlabType.Int16)
+                        .readIndex();
+                assertEquals(1, index.getEntries().size());
+                assertEquals("large", index.getEntries().get(0).getHeader().getName());
+            }
+
+        } finally {
+            executor.shutdown();
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    private static void checkScan(Mat5Index expected, Mat5Index actual) {
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getEntries().size(), actual.getEntries().size());
+        for (int i = 0; i < expected.getEntries().size(); i++) {
+            Mat5Index.Entry a = expected.getEntries().get(i);
+            Mat5Index.Entry b = actual.getEntries().get(i);
+            assertEquals(a.getHeader().getName(), b.getHeader().getName());
+            assertEquals(a.getHeader().getType(), b.getHeader().getType());
+            assertArrayEquals(a.getHeader().getDimensions(), b.getHeader().getDimensions());
+            assertEquals(a.getOffset(), b.getOffset());
+            assertEquals(a.getStoredSize(), b.getStoredSize());
+            assertEquals(a.getUncompressedSize(), b.getUncompressedSize());
+            assertEquals(a.isCompressed(), b.isCompressed());
+        }
+        Mat5Index.Entry large = actual.getEntry("large");
+        assertTrue(large.getStoredSize() < large.getUncompressedSize());
+    }
+
+    @Test
+    public void testZeroCopyFileReading() throws Exception {
+        Matrix matrix = Mat5.newMatrix(300, 40);
+        for (int i = 0; i < matrix.getNumElements(); i++) {
+            matrix.setDouble(i, i);
+        }
+        MatFile expected = Mat5.newMatFile()
+                .addArray("matrix", matrix)
+                .addArray("complex", Mat5.newComplexScalar(1, 2))
+                .addArray("string", Mat5.newString("abc"));
+
+        File testFile = new File("ArrayReadTest.zerocopy.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                Mat5.newWriter(sink).setDeflateLevel(Deflater.NO_COMPRESSION).writeMat(expected);
+            }
+
+            try (Mat5File mat = Mat5.readFromFileZeroCopy(testFile)) {
+                assertEquals(expected, mat);
+
+                // Data is shared with the read-only mapping
+                try {
+                    mat.getMatrix("matrix").setDouble(0, 1);
+                    fail("expected read-only matrix");
+                } catch (ReadOnlyBufferException expectedException) {
+                }
+
+                // Writing with a different byte order must not modify the shared data
+                ByteOrder reverseOrder = mat.getByteOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+                ByteBuffer buffer = ByteBuffer.allocate((int) mat.getUncompressedSerializedSize());
+                mat.writeTo(Sinks.wrap(buffer).order(reverseOrder));
+                buffer.flip();
+                Mat5File reversed = Mat5.newReader(Sources.wrap(buffer)).readMat();
+                assertEquals(reverseOrder, reversed.getByteOrder());
+                for (MatFile.Entry entry : expected.getEntries()) {
+                    assertEquals(entry.getValue(), reversed.getArray(entry.getName()));
+                }
+                assertEquals(expected, mat);
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testUpdateInPlace() throws Exception {
+        Matrix matrix = Mat5.newMatrix(300, 40);
+        Matrix ints = Mat5.newMatrix(2, 3, MatlabType.Int32);
+        MatFile input = Mat5.newMatFile()
+                .addArray("matrix", matrix)
+                .addArray("ints", ints);
+
+        File testFile = new File("ArrayReadTest.update.tmp");
+        try {
+            // Uncompressed file in non-native order with a compressed entry at the end
+            ByteOrder reverseOrder = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            try (Sink sink = Sinks.newStreamingFile(testFile).order(reverseOrder)) {
+                Mat5.newWriter(sink).setDeflateLevel(Deflater.NO_COMPRESSION).writeMat(input);
+            }
+            Mat5.appendToFile(Mat5.newMatFile().addArray("compressed", Mat5.newMatrix(1, 3)), testFile);
+            long fileSize = testFile.length();
+
+            try (Mat5File mat = Mat5.openFileForUpdate(testFile)) {
+                assertEquals(reverseOrder, mat.getByteOrder());
+                mat.getMatrix("matrix").setDouble(1, 2, 3.5);
+                mat.getMatrix("ints").setLong(5, -7);
+                try {
+                    mat.getMatrix("compressed").setDouble(0, 1);
+                    fail("expected read-only copy");
+                } catch (ReadOnlyBufferException expected) {
+                }
+            }
+
+            assertEquals(fileSize, testFile.length());
+            Mat5File result = Mat5.readFromFile(testFile);
+            assertEquals(3.5, result.getMatrix("matrix").getDouble(1, 2), 0);
+            assertEquals(-7, result.getMatrix("ints").getLong(5));
+            assertEquals(0, result.getMatrix("matrix").getDouble(0), 0);
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        Struct imu = Mat5.newStruct()
+                .set("accel", Mat5.newMatrix(100, 3))
+                .set("gyro", Mat5.newMatrix(100, 3));
+        Struct sensors = Mat5.newStruct()
+                .set("imu", imu)
+                .set("gps", Mat5.newMatrix(100, 2));
+        Cell runs = Mat5.newCell(1, 2)
+                .set(0, Mat5.newStruct().set("accel", Mat5.newScalar(1)).set("gyro", Mat5.newScalar(2)))
+                .set(1, Mat5.newStruct().set("accel", Mat5.newScalar(3)).set("gyro", Mat5.newScalar(4)));
+        Struct log = Mat5.newStruct()
+                .set("sensors", sensors)
+                .set("runs", runs)
+                .set("notes", Mat5.newString("abc"));
+        MatFile input = Mat5.newMatFile()
+                .addArray("log", log)
+                .addArray("other", Mat5.newScalar(7));
+
+        ByteBuffer buffer = MatTestUtil.toBinaryForm(input, ByteOrder.nativeOrder());
+        buffer.flip();
+        MatFile mat = Mat5.newReader(Sources.wrap(buffer))
+                .setProjection("log.sensors.imu.accel", "log.runs.gyro")
+                .readMat();
+
+        // Non-matching root entries get filtered
+        assertEquals(1, mat.getNumEntries());
+        Struct result = mat.getStruct("log");
+        assertEquals(Arrays.asList("sensors", "runs"), result.getFieldNames());
+        assertEquals(Arrays.asList("imu"), result.getStruct("sensors").getFieldNames());
+        assertEquals(Arrays.asList("accel"), result.getStruct("sensors").getStruct("imu").getFieldNames());
+        assertEquals(100, result.getStruct("sensors").getStruct("imu").getMatrix("accel").getNumRows());
+
+        // Cells are transparent
+        Cell resultRuns = result.getCell("runs");
+        assertEquals(Arrays.asList("gyro"), resultRuns.getStruct(1).getFieldNames());
+        assertEquals(4, resultRuns.getStruct(1).getMatrix("gyro").getInt(0));
+    }
+
 }
@@ -23,9 +23,11 @@ package us.hebi.matlab.mat.tests.mat5;
 import us.hebi.matlab.mat.format.BufferAllocator;
 import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.format.Mat5LazyFile;
 import us.hebi.matlab.mat.types.*;
 import us.hebi.matlab.mat.util.Unsafe9R;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -88,6 +90,19 @@ public class MatTestUtil {
             assertEquals("Loading the file a second time should have the same hash as the first load", resultMat.hashCode(), secondLoad.hashCode());
         }
 
+        // Lazily loaded entries should match the eagerly loaded ones. Iterate backwards to
+        // make sure that entries can be loaded independently of each other.
+        if (equalityCheck) {
+            try (Source source = getSource(MatTestUtil.class, name)) {
+                Mat5LazyFile lazyMat = Mat5.newReader(source).setReducedHeader(reduced).readMatLazily();
+                assertEquals("Lazy file should have the same number of entries", resultMat.getNumEntries(), lazyMat.getNumEntries());
+                for (int i = lazyMat.getNumEntries() - 1; i >= 0; i--) {
+                    assertEquals("Lazily loaded entry should match eagerly loaded entry", resultMat.getArray(i), lazyMat.getArray(i));
+                }
+                lazyMat.close();
+            }
+        }
+
         if (!testRoundTrip)
             return resultMat;
 
@@ -127,6 +142,26 @@ public class MatTestUtil {
             leakChecker.verifyAllReleased();
         }
 
+        // Read-ahead for sources that can't be sliced needs to release all buffers as well
+        buffer.rewind();
+        try (Source source = Sources.wrapInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.limit()))) {
+            BufferLeakChecker leakChecker = new BufferLeakChecker();
+            Mat5File streamed = Mat5.newReader(source)
+                    .setBufferAllocator(leakChecker)
+                    .enableConcurrentDecompression(executorService, 16 * 1024)
+                    .setReducedHeader(reduced)
+                    .readMat();
+            if (equalityCheck) {
+                buffer.rewind();
+                try (Source bufferSource = Sources.wrap(buffer)) {
+                    Mat5File expected = Mat5.newReader(bufferSource).setReducedHeader(reduced).readMat();
+                    assertEquals("Read-ahead should match reading from buffer", expected, streamed);
+                }
+            }
+            streamed.close();
+            leakChecker.verifyAllReleased();
+        }
+
         // Read data using concurrent reader
         buffer.rewind();
         try (Source source = Sources.wrap(buffer)) {
@@ -182,7 +217,7 @@ public class MatTestUtil {
         }
     }
 
-    private static Source getSource(Class clazz, String name) throws IOException {
+    static Source getSource(Class clazz, String name) throws IOException {
         // Read mat into buffer
         InputStream inputStream = clazz.getResourceAsStream(name);
         checkNotNull(inputStream, "File %s could not be found", name);
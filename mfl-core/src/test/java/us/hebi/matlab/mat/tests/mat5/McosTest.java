@@ -23,10 +23,12 @@ package us.hebi.matlab.mat.tests.mat5;
 import org.junit.Test;
 import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.format.Mat5LazyFile;
 import us.hebi.matlab.mat.types.MatFile;
 import us.hebi.matlab.mat.types.MatlabType;
 import us.hebi.matlab.mat.types.Matrix;
 import us.hebi.matlab.mat.types.ObjectStruct;
+import us.hebi.matlab.mat.types.Source;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -240,6 +242,21 @@ public class McosTest {
 
     }
 
+    @Test
+    public void testLazyHandleClassReferenceEquality() throws Exception {
+        try (Source source = MatTestUtil.getSource(MatTestUtil.class, "mcos/handles.mat");
+             Mat5LazyFile mat = Mat5.newReader(source).readMatLazily()) {
+
+            // Entries get loaded separately, but the subsystem objects only get parsed once
+            assertSame(
+                    mat.getObject("objA").getMatrix("myPropA"),
+                    mat.getObject("objB").getObject("myObjA").getMatrix("myPropA"));
+            assertSame(
+                    mat.getObject("objA").getMatrix("myPropA"),
+                    mat.getObject("objC").getObject("myPropA").getMatrix("myPropA"));
+        }
+    }
+
     /*
      t =
          2×2 table
@@ -26,6 +26,7 @@ import us.hebi.matlab.mat.format.Mat5File;
 import us.hebi.matlab.mat.format.Mat5Subsystem;
 import us.hebi.matlab.mat.types.Char;
 
+import java.io.File;
 import java.io.IOException;
 
 import static org.junit.Assert.*;
@@ -46,4 +47,27 @@ public class SubsystemTest {
         assertTrue(mat.getArray(3) instanceof Char);
     }
 
+    @Test
+    public void testAppendToFile() throws IOException {
+        Mat5File mat = MatTestUtil.readMat("mcos/handles.mat");
+        File file = new File("SubsystemTest.append.tmp");
+        try {
+            Mat5.writeToFile(mat, file);
+            long subsysOffset = Mat5.readFromFile(file).getSubsysOffset();
+
+            // Appended entries go before the subsystem
+            Mat5.appendToFile(Mat5.newMatFile().addArray("test", Mat5.newString("some value")), file);
+            Mat5File result = Mat5.readFromFile(file);
+            assertTrue(result.getSubsysOffset() > subsysOffset);
+            assertEquals(mat.getNumEntries() + 1, result.getNumEntries());
+            assertEquals("some value", result.getChar("test").getString());
+            assertTrue(result.getSubsystem().getValue() instanceof Mat5Subsystem);
+            for (int i = 0; i < mat.getNumEntries(); i++) {
+                assertEquals(mat.getArray(i), result.getArray(i));
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
 }
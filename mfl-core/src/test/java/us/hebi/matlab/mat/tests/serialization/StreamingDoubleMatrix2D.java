@@ -53,6 +53,7 @@ import static us.hebi.matlab.mat.util.Preconditions.*;
  * files get combined and written into the target sink.
  * <p>
  * This example that is not considered part of the stable API.
+ * See {@link Mat5#newStreamingMatrix(int)} for a supported implementation.
  *
  * @author Florian Enner
  * @since 08 May 2018
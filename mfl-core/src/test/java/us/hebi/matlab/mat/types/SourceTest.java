@@ -27,6 +27,7 @@ import java.io.EOFException;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.Random;
+import java.util.zip.Deflater;
 
 import static org.junit.Assert.*;
 import static us.hebi.matlab.mat.util.Bytes.*;
@@ -108,6 +109,51 @@ public class SourceTest {
         assertArrayEquals(bb.array(), actual.array());
     }
 
+    @Test
+    public void readBufferView() throws Exception {
+        AbstractSource source = (AbstractSource) asSource(bb);
+        source.skip(16);
+        ByteBuffer view = source.readBufferView(64);
+        assertTrue(view.isReadOnly());
+        assertEquals(bb.order(), view.order());
+        assertEquals(bb.getLong(16), view.getLong(0));
+        assertEquals(64, view.remaining());
+        assertEquals(80, source.getPosition());
+    }
+
+    @Test
+    public void readInflated() throws Exception {
+        // Compress random data so that inflation has to refill the input many times
+        ByteBuffer compressed = ByteBuffer.allocate(2 * n);
+        Sink sink = Sinks.wrap(compressed);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (Sink deflated = sink.writeDeflated(deflater)) {
+            deflated.writeByteBuffer(bb);
+            bb.rewind();
+        } finally {
+            deflater.end();
+        }
+        compressed.flip();
+        int numCompressed = compressed.remaining();
+
+        // Primitives and direct buffers
+        try (Source source = asSource(compressed).readInflated(numCompressed, 512)) {
+            assertEquals(bb.getLong(0), source.readLong());
+            ByteBuffer actual = ByteBuffer.allocateDirect(n - SIZEOF_LONG);
+            source.readByteBuffer(actual);
+            actual.flip();
+            bb.position(SIZEOF_LONG);
+            assertEquals("buffer contents", 0, bb.compareTo(actual));
+            assertEquals(n, source.getPosition());
+            try {
+                source.readByte();
+                fail("expected to be at EOF");
+            } catch (EOFException eof) {
+                // expected
+            }
+        }
+    }
+
     @Test
     public void testStreamingSource() throws Exception {
         // Test case that writes/reads native buffers directly to
@@ -137,6 +183,179 @@ public class SourceTest {
 
     }
 
+    @Test
+    public void testReadAheadSource() throws Exception {
+        // Two small chunks so that the reading thread needs to wait for chunks to be recycled
+        File testFile = new File("SourceTest.readAhead.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                sink.writeByteBuffer(bb);
+                bb.rewind();
+            }
+            try (Source source = Sources.openReadAheadFile(testFile, 8192).order(bb.order())) {
+                assertEquals(bb.getLong(0), source.readLong());
+                source.skip(4096);
+                assertEquals(bb.getInt(4104), source.readInt());
+                ByteBuffer buf = ByteBuffer.allocateDirect(n - 4108);
+                source.readByteBuffer(buf);
+                buf.flip();
+                bb.position(4108);
+                assertEquals("buffer contents", 0, bb.compareTo(buf));
+                assertEquals(n, source.getPosition());
+                try {
+                    source.readByte();
+                    fail("expected to be at EOF");
+                } catch (EOFException eof) {
+                    // expected
+                }
+            }
+
+            // Closing stops the reading thread while it waits for free chunks
+            try (Source source = Sources.openReadAheadFile(testFile, 8192)) {
+                assertEquals(bb.get(0), source.readByte());
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+
+    @Test
+    public void testSegmentedMappedSource() throws Exception {
+        // Use tiny segments so that all reads cross a multitude of boundaries
+        File testFile = new File("SourceTest.segmented.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                sink.writeByteBuffer(bb);
+                bb.rewind();
+            }
+            try (Source source = Sources.openMappedFile(testFile, 1000).order(bb.order())) {
+                assertFalse(source.isMutatedByChildren());
+
+                // Mixed primitive reads at odd offsets
+                source.skip(3);
+                assertEquals(bb.get(3), source.readByte());
+                assertEquals(bb.getInt(4), source.readInt());
+                for (int i = 8; i < 2000; i += SIZEOF_LONG) {
+                    assertEquals(bb.getLong(i), source.readLong());
+                }
+
+                // Child stream that spans multiple segments
+                byte[] expected = new byte[2500];
+                byte[] actual = new byte[expected.length];
+                bb.position(2000);
+                bb.get(expected);
+                Sources.wrapInputStream(((AbstractSource) source).readBytesAsStream(expected.length))
+                        .readBytes(actual, 0, actual.length);
+                assertArrayEquals(expected, actual);
+
+                // Bulk read of the remainder
+                ByteBuffer remaining = ByteBuffer.allocateDirect(n - 4500);
+                source.readByteBuffer(remaining);
+                remaining.flip();
+                bb.limit(n).position(4500);
+                assertEquals("buffer contents", 0, bb.compareTo(remaining));
+                assertEquals(n, source.getPosition());
+
+                try {
+                    source.readByte();
+                    fail("expected to be at EOF");
+                } catch (EOFException eof) {
+                    // expected
+                }
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testSegmentedMappedBufferView() throws Exception {
+        File testFile = new File("SourceTest.segmentedView.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                sink.writeByteBuffer(bb);
+                bb.rewind();
+            }
+            try (AbstractSource source = (AbstractSource) Sources.openMappedFile(testFile, 1000).order(bb.order())) {
+                // Section within the first segment
+                source.skip(8);
+                ByteBuffer view = source.readBufferView(800);
+                assertEquals(bb.getLong(8), view.getLong(0));
+                assertEquals(bb.getLong(800), view.getLong(792));
+
+                // Section that crosses a segment boundary gets mapped separately
+                view = source.readBufferView(800);
+                assertTrue(view.isReadOnly());
+                assertEquals(bb.getLong(808), view.getLong(0));
+                assertEquals(bb.getLong(1600), view.getLong(792));
+                assertEquals(1608, source.getPosition());
+
+                // Section in a later segment
+                source.skip(200);
+                view = source.readBufferView(16);
+                assertEquals(bb.getLong(1808), view.getLong(0));
+                assertEquals(1824, source.getPosition());
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testWritableMappedBufferView() throws Exception {
+        File testFile = new File("SourceTest.writableView.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                sink.writeByteBuffer(bb);
+                bb.rewind();
+            }
+            try (AbstractSource source = (AbstractSource) Sources.openMappedFile(testFile, 1000, true).order(bb.order())) {
+                source.skip(1808);
+                ByteBuffer view = source.readBufferView(16);
+                assertFalse(view.isReadOnly());
+                view.putLong(0, 42);
+
+                // Section that crosses a segment boundary
+                view = source.readBufferView(800);
+                assertFalse(view.isReadOnly());
+                view.putLong(792, 43);
+            }
+            try (Source source = Sources.openFile(testFile).order(bb.order())) {
+                source.skip(1808);
+                assertEquals(42, source.readLong());
+                assertEquals(bb.getLong(1816), source.readLong());
+                source.skip(2616 - 1824);
+                assertEquals(43, source.readLong());
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
+
+    @Test
+    public void testMappingPolicies() throws Exception {
+        File testFile = new File("SourceTest.policies.tmp");
+        try {
+            try (Sink sink = Sinks.newStreamingFile(testFile)) {
+                sink.writeByteBuffer(bb);
+                bb.rewind();
+            }
+            for (MappingPolicy policy : MappingPolicy.values()) {
+                try (AbstractSource source = (AbstractSource) Sources.openFile(testFile, policy).order(bb.order());
+                     AbstractSource segmented = (AbstractSource) Sources.openMappedFile(testFile, 1000, false, policy).order(bb.order())) {
+                    for (AbstractSource src : new AbstractSource[]{source, segmented, (AbstractSource) segmented.slice(8, 3000)}) {
+                        // Prefetching does not move the source, even beyond the end
+                        src.prefetch(n + 10000);
+                        assertEquals(0, src.getPosition());
+                        assertEquals(bb.getLong(src == source || src == segmented ? 0 : 8), src.readLong());
+                    }
+                }
+            }
+        } finally {
+            assertTrue("delete temp file", testFile.delete());
+        }
+    }
 
     private Source asSource(ByteBuffer bb) {
         return Sources.wrap(bb.duplicate()).order(bb.order());
@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * MAT File Library
+ * %%
+ * Copyright (C) 2018 HEBI Robotics
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package us.hebi.matlab.mat.util;
+
+import org.junit.Test;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Florian Enner
+ * @since 16 Oct 2026
+ */
+public class ZlibPoolTest {
+
+    @Test
+    public void reuseInstances() throws DataFormatException {
+        ZlibPool pool = new ZlibPool(1);
+        byte[] input = new byte[1000];
+        byte[] compressed = new byte[1000];
+        byte[] output = new byte[1000];
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                input[i] = (byte) i;
+
+                Deflater deflater = pool.borrowDeflater(Deflater.BEST_SPEED);
+                deflater.setInput(input);
+                deflater.finish();
+                int numCompressed = 0;
+                while (!deflater.finished()) {
+                    // Changing the level of a reused instance may take an extra call
+                    numCompressed += deflater.deflate(compressed, numCompressed, compressed.length - numCompressed);
+                }
+                pool.release(deflater);
+                Deflater reused = pool.borrowDeflater(Deflater.BEST_COMPRESSION);
+                try {
+                    assertSame(deflater, reused);
+                } finally {
+                    pool.release(reused);
+                }
+
+                Inflater inflater = pool.borrowInflater();
+                inflater.setInput(compressed, 0, numCompressed);
+                assertEquals(input.length, inflater.inflate(output));
+                assertArrayEquals(input, output);
+                pool.release(inflater);
+                Inflater reusedInflater = pool.borrowInflater();
+                try {
+                    assertSame(inflater, reusedInflater);
+                } finally {
+                    pool.release(reusedInflater);
+                }
+            }
+        } finally {
+            pool.clear();
+        }
+    }
+
+    @Test
+    public void poolRawInstancesSeparately() {
+        ZlibPool pool = new ZlibPool(1);
+        Deflater raw = pool.borrowDeflater(Deflater.BEST_SPEED, true);
+        pool.release(raw, true);
+        Deflater wrapped = pool.borrowDeflater(Deflater.BEST_SPEED);
+        try {
+            assertNotSame(raw, wrapped);
+            assertSame(raw, pool.borrowDeflater(Deflater.BEST_SPEED, true));
+        } finally {
+            pool.release(wrapped);
+            pool.release(raw, true);
+            pool.clear();
+        }
+        assertEquals(0, pool.getNumPooledDeflaters());
+    }
+
+    @Test
+    public void evictWhenFull() {
+        ZlibPool pool = new ZlibPool(1);
+        Inflater first = pool.borrowInflater();
+        Inflater second = pool.borrowInflater();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getNumPooledInflaters());
+
+        // Evicted instances get ended
+        try {
+            second.reset();
+            fail("expected evicted inflater to be ended");
+        } catch (RuntimeException expected) {
+        }
+
+        pool.clear();
+        assertEquals(0, pool.getNumPooledInflaters());
+    }
+
+}